@@ -18,6 +18,7 @@ package examples;
 
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.asyncsql.AsyncSQLClient;
 import io.vertx.ext.asyncsql.MySQLClient;
 import io.vertx.ext.asyncsql.PostgreSQLClient;
 import io.vertx.ext.sql.SQLClient;
@@ -104,5 +105,16 @@ public class MySQLPostgreSQLExamples {
 
   }
 
+  public void examplePrimary(AsyncSQLClient client) {
+
+    // This statement changes data, so it must not run on a replica:
+
+    client.primary().query("INSERT INTO orders (item) VALUES ('book') RETURNING id", res -> {
+      if (res.succeeded()) {
+        // Got the id of the order
+      }
+    });
+
+  }
 
 }
@@ -16,8 +16,15 @@
 
 package io.vertx.ext.asyncsql;
 
+import io.vertx.codegen.annotations.Fluent;
 import io.vertx.codegen.annotations.VertxGen;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.SQLClient;
+import io.vertx.ext.sql.SQLConnection;
 
 /**
  * Represents an asynchronous SQL client
@@ -28,4 +35,71 @@ import io.vertx.ext.sql.SQLClient;
 @VertxGen
 public interface AsyncSQLClient extends SQLClient {
 
+  /**
+   * Returns a client routing its requests to a partition declared in the {@code partitions} configuration object.
+   * Each partition has its own connections and waiting requests, so slow queries sent to one partition cannot exhaust
+   * the connections of the others. Closing the returned client has no effect, the partitions are closed with this
+   * client.
+   *
+   * @param name the partition name
+   * @return the client of the partition
+   * @throws IllegalArgumentException when no such partition is declared
+   */
+  AsyncSQLClient partition(String name);
+
+  /**
+   * Returns a client sending all its requests to the primary. Its {@code query} methods never run on a replica and are
+   * never hedged, which suits the statements that change data or must see the latest data, such as
+   * {@code INSERT ... RETURNING}, {@code SELECT ... FOR UPDATE} or {@code SELECT nextval(...)}. Closing the returned
+   * client has no effect, the primary is closed with this client.
+   *
+   * @return the client of the primary
+   */
+  AsyncSQLClient primary();
+
+  /**
+   * Returns a snapshot of the statistics of the connection pool of this client: the idle and in use connections, the
+   * requests waiting for a connection by priority, and the counters of usages, failures, connection tests, adaptive
+   * sizing, event loop affinity, leaks and prepared statements. The statistics of the default pool include those of
+   * the partitions under {@code partitions} and of the replicas under {@code replicas}.
+   *
+   * @return the statistics of the pool
+   */
+  JsonObject getPoolStats();
+
+  /**
+   * Returns a connection that can be used to perform SQL operations on. When the pool is exhausted, the request waits
+   * in the lane of its priority.
+   *
+   * @param priority the priority of the request
+   * @param handler  the handler which is called when the <code>JdbcConnection</code> object is ready for use.
+   */
+  @Fluent
+  SQLClient getConnection(Priority priority, Handler<AsyncResult<SQLConnection>> handler);
+
+  /**
+   * Execute a single SQL statement, this method acquires a connection with the given priority from the pool and
+   * executes the SQL statement and returns it back after the execution.
+   *
+   * @param priority the priority of the request
+   * @param sql      the statement to execute
+   * @param handler  the result handler
+   * @return self
+   */
+  @Fluent
+  SQLClient query(Priority priority, String sql, Handler<AsyncResult<ResultSet>> handler);
+
+  /**
+   * Execute a single SQL prepared statement, this method acquires a connection with the given priority from the pool
+   * and executes the SQL prepared statement and returns it back after the execution.
+   *
+   * @param priority  the priority of the request
+   * @param sql       the statement to execute
+   * @param arguments the arguments to the statement
+   * @param handler   the result handler
+   * @return self
+   */
+  @Fluent
+  SQLClient queryWithParams(Priority priority, String sql, JsonArray arguments,
+                            Handler<AsyncResult<ResultSet>> handler);
 }
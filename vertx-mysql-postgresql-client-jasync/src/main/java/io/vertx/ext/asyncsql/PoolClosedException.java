@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql;
+
+import io.vertx.core.VertxException;
+
+/**
+ * Reported when a connection is requested from a pool that is closing or closed, including to the requests that were
+ * waiting for a connection when the pool was closed.
+ */
+public class PoolClosedException extends VertxException {
+
+  public PoolClosedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql;
+
+import io.vertx.core.VertxException;
+
+/**
+ * Reported when a connection is requested while all the connections of the pool are in use and the queue of waiting
+ * requests already holds {@code maxWaitQueueSize} requests.
+ */
+public class PoolExhaustedException extends VertxException {
+
+  public PoolExhaustedException(String message) {
+    super(message);
+  }
+}
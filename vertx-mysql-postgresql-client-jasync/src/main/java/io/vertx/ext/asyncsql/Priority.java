@@ -0,0 +1,42 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql;
+
+import io.vertx.codegen.annotations.VertxGen;
+
+/**
+ * The priority of a request for a connection. When the pool is exhausted, waiting requests are served by priority,
+ * while lower priorities still get a share of the connections given back.
+ */
+@VertxGen
+public enum Priority {
+
+  /**
+   * Latency-critical requests.
+   */
+  HIGH,
+
+  /**
+   * The priority of the requests that do not specify one.
+   */
+  NORMAL,
+
+  /**
+   * Background requests, such as reporting jobs.
+   */
+  LOW
+}
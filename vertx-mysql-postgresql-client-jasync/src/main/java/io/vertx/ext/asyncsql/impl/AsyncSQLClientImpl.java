@@ -23,8 +23,11 @@ import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.asyncsql.AsyncSQLClient;
+import io.vertx.ext.asyncsql.Priority;
+import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
 import io.vertx.ext.sql.*;
 
+import java.util.UUID;
 import java.util.function.Function;
 
 /**
@@ -33,52 +36,115 @@ import java.util.function.Function;
 public class AsyncSQLClientImpl implements AsyncSQLClient {
 
   private final BaseSQLClient baseClient;
+  // the partition this client routes to, null for the default pool
+  private final String partition;
+  // whether the reads of this client may run on the replicas
+  private final boolean replicaReads;
 
   public AsyncSQLClientImpl(Vertx vertx, JsonObject config, boolean mysql) {
+    this(vertx, config, mysql, UUID.randomUUID().toString());
+  }
+
+  public AsyncSQLClientImpl(Vertx vertx, JsonObject config, boolean mysql, String poolName) {
     if (mysql) {
-      baseClient = new MYSQLClientImpl(vertx, config);
+      baseClient = new MYSQLClientImpl(vertx, config, poolName);
     } else {
-      baseClient = new PostgreSQLClientImpl(vertx, config);
+      baseClient = new PostgreSQLClientImpl(vertx, config, poolName);
+    }
+    partition = null;
+    replicaReads = true;
+  }
+
+  AsyncSQLClientImpl(BaseSQLClient baseClient, String partition) {
+    this(baseClient, partition, partition == null);
+  }
+
+  private AsyncSQLClientImpl(BaseSQLClient baseClient, String partition, boolean replicaReads) {
+    this.baseClient = baseClient;
+    this.partition = partition;
+    this.replicaReads = replicaReads;
+  }
+
+  @Override
+  public AsyncSQLClient partition(String name) {
+    if (!baseClient.partitionNames().contains(name)) {
+      throw new IllegalArgumentException("Unknown partition: " + name + ", declared partitions are "
+        + baseClient.partitionNames());
     }
+    return new AsyncSQLClientImpl(baseClient, name);
+  }
+
+  @Override
+  public AsyncSQLClient primary() {
+    return replicaReads ? new AsyncSQLClientImpl(baseClient, partition, false) : this;
+  }
+
+  @Override
+  public JsonObject getPoolStats() {
+    return baseClient.getPoolStats(partition);
   }
 
   @Override
   public void close() {
-    baseClient.close(null);
+    close(null);
   }
 
   @Override
   public void close(Handler<AsyncResult<Void>> completionHandler) {
-    baseClient.close(completionHandler);
+    if (partition == null && replicaReads) {
+      baseClient.close(completionHandler);
+    } else if (completionHandler != null) {
+      // the partitions and the primary are closed with the client
+      completionHandler.handle(Future.succeededFuture());
+    }
   }
 
   @Override
   public SQLClient getConnection(Handler<AsyncResult<SQLConnection>> handler) {
-    baseClient.getConnection(handler);
+    baseClient.getConnection(partition, Priority.NORMAL, handler);
+    return this;
+  }
+
+  @Override
+  public SQLClient getConnection(Priority priority, Handler<AsyncResult<SQLConnection>> handler) {
+    baseClient.getConnection(partition, priority, handler);
     return this;
   }
 
   @Override
   public SQLClient query(String sql, Handler<AsyncResult<ResultSet>> handler) {
-    executeDirect(conn -> Future.future(f -> conn.query(sql, f)), handler);
+    executeIdempotentRead(Priority.NORMAL, conn -> Future.future(f -> conn.query(sql, f)), handler);
+    return this;
+  }
+
+  @Override
+  public SQLClient query(Priority priority, String sql, Handler<AsyncResult<ResultSet>> handler) {
+    executeIdempotentRead(priority, conn -> Future.future(f -> conn.query(sql, f)), handler);
     return this;
   }
 
   @Override
   public SQLClient queryStream(String sql, Handler<AsyncResult<SQLRowStream>> handler) {
-    executeDirect(conn -> Future.future(f -> conn.queryStream(sql, f)), handler);
+    executeRead(conn -> Future.future(f -> conn.queryStream(sql, f)), handler);
     return this;
   }
 
   @Override
   public SQLClient queryStreamWithParams(String sql, JsonArray params, Handler<AsyncResult<SQLRowStream>> handler) {
-    executeDirect(conn -> Future.future(f -> conn.queryStreamWithParams(sql, params, f)), handler);
+    executeRead(conn -> Future.future(f -> conn.queryStreamWithParams(sql, params, f)), handler);
     return this;
   }
 
   @Override
   public SQLClient queryWithParams(String sql, JsonArray params, Handler<AsyncResult<ResultSet>> handler) {
-    executeDirect(conn -> Future.future(f -> conn.queryWithParams(sql, params, f)), handler);
+    executeIdempotentRead(Priority.NORMAL, conn -> Future.future(f -> conn.queryWithParams(sql, params, f)), handler);
+    return this;
+  }
+
+  @Override
+  public SQLClient queryWithParams(Priority priority, String sql, JsonArray params,
+                                   Handler<AsyncResult<ResultSet>> handler) {
+    executeIdempotentRead(priority, conn -> Future.future(f -> conn.queryWithParams(sql, params, f)), handler);
     return this;
   }
 
@@ -107,7 +173,44 @@ public class AsyncSQLClientImpl implements AsyncSQLClient {
   }
 
   private <T> void executeDirect(Function<SQLConnection, Future<T>> action, Handler<AsyncResult<T>> handler) {
-    getConnection(getConnection -> {
+    execute(false, Priority.NORMAL, action, handler);
+  }
+
+  private <T> void executeRead(Function<SQLConnection, Future<T>> action, Handler<AsyncResult<T>> handler) {
+    execute(true, Priority.NORMAL, action, handler);
+  }
+
+  /**
+   * Runs a read that can safely run twice, hedged on a second replica when hedging is enabled.
+   */
+  private <T> void executeIdempotentRead(Priority priority, Function<SQLConnection, Future<T>> action,
+                                         Handler<AsyncResult<T>> handler) {
+    HedgePolicy policy = replicaReads ? baseClient.hedgePolicy() : null;
+    if (policy == null) {
+      execute(true, priority, action, handler);
+    } else {
+      new HedgedRead<>(policy, priority, action, handler).start();
+    }
+  }
+
+  /**
+   * @param read whether the action only reads, and may run on a replica
+   */
+  private <T> void execute(boolean read, Priority priority, Function<SQLConnection, Future<T>> action,
+                           Handler<AsyncResult<T>> handler) {
+    if (read && replicaReads) {
+      run(onConnection -> baseClient.getReadConnection(priority, onConnection), action, handler);
+    } else {
+      run(onConnection -> getConnection(priority, onConnection), action, handler);
+    }
+  }
+
+  /**
+   * Runs an action on a connection, and closes the connection once the action completed.
+   */
+  private static <T> void run(Handler<Handler<AsyncResult<SQLConnection>>> connectionProvider,
+                              Function<SQLConnection, Future<T>> action, Handler<AsyncResult<T>> handler) {
+    connectionProvider.handle(getConnection -> {
       if (getConnection.failed()) {
         handler.handle(Future.failedFuture(getConnection.cause()));
       } else {
@@ -128,4 +231,83 @@ public class AsyncSQLClientImpl implements AsyncSQLClient {
       }
     });
   }
+
+  /**
+   * A read sent to a replica, and to a second replica when the first one has not answered within the hedging delay.
+   * The first successful attempt wins; the other one completes in the background and gives its connection back as
+   * usual. The read only fails when all its attempts failed.
+   */
+  private final class HedgedRead<T> {
+
+    private final HedgePolicy policy;
+    private final Priority priority;
+    private final Function<SQLConnection, Future<T>> action;
+    private final Handler<AsyncResult<T>> handler;
+    private final long start = System.currentTimeMillis();
+    private AsyncConnectionPool first;
+    private int pending;
+    private boolean done;
+    private long timerId = -1;
+
+    HedgedRead(HedgePolicy policy, Priority priority, Function<SQLConnection, Future<T>> action,
+               Handler<AsyncResult<T>> handler) {
+      this.policy = policy;
+      this.priority = priority;
+      this.action = action;
+      this.handler = handler;
+    }
+
+    void start() {
+      long delay = policy.delay();
+      synchronized (this) {
+        first = baseClient.selectReplica(null);
+        pending = 1;
+        if (delay >= 0) {
+          timerId = baseClient.vertx.setTimer(Math.max(1, delay), id -> hedge());
+        }
+      }
+      run(onConnection -> baseClient.getReadConnection(first, priority, onConnection), action,
+        ar -> complete(ar, false));
+    }
+
+    private void hedge() {
+      AsyncConnectionPool second;
+      synchronized (this) {
+        timerId = -1;
+        if (done || (second = baseClient.selectReplica(first)) == null) {
+          return;
+        }
+        pending++;
+      }
+      policy.hedged();
+      run(onConnection -> baseClient.getReadConnection(second, priority, onConnection), action,
+        ar -> complete(ar, true));
+    }
+
+    /**
+     * @param hedge whether the attempt is the second one
+     */
+    private void complete(AsyncResult<T> ar, boolean hedge) {
+      if (!hedge && ar.succeeded()) {
+        policy.record(System.currentTimeMillis() - start);
+      }
+      long timer;
+      synchronized (this) {
+        pending--;
+        // a failed attempt waits for the other one
+        if (done || ar.failed() && pending > 0) {
+          return;
+        }
+        done = true;
+        timer = timerId;
+      }
+      if (timer != -1) {
+        baseClient.vertx.cancelTimer(timer);
+      }
+      if (hedge && ar.succeeded()) {
+        policy.won();
+      }
+      handler.handle(ar);
+    }
+  }
 }
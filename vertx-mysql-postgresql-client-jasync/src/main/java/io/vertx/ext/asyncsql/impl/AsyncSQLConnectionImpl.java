@@ -21,6 +21,7 @@ import com.github.jasync.sql.db.QueryResult;
 import io.vertx.core.*;
 import io.vertx.core.json.JsonArray;
 import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
+import io.vertx.ext.asyncsql.impl.pool.PreparedStatementCache;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.SQLConnection;
 import io.vertx.ext.sql.SQLOptions;
@@ -31,6 +32,7 @@ import io.vertx.ext.sql.UpdateResult;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -43,14 +45,18 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
   private final Vertx vertx;
   private volatile boolean inTransaction = false;
   private boolean inAutoCommit = true;
+  // the failure of the statement that started the transaction, until the transaction ends
+  private Throwable abortCause;
 
   private final Connection connection;
   private final AsyncConnectionPool pool;
+  private final PreparedStatementCache preparedStatements;
 
   public AsyncSQLConnectionImpl(Connection connection, AsyncConnectionPool pool, Vertx vertx) {
     this.connection = connection;
     this.pool = pool;
     this.vertx = vertx;
+    this.preparedStatements = pool.getPreparedStatementCache(connection);
   }
 
   /**
@@ -58,6 +64,30 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
    */
   protected abstract String getStartTransactionStatement();
 
+  /**
+   * Whether the start transaction statement can be sent in the same query as the first statement of the transaction,
+   * the result being the one of the last statement of the query
+   */
+  protected boolean canPrependStartTransactionStatement() {
+    return false;
+  }
+
+  /**
+   * Whether several statements can be sent in a single query, the result being the one of the last statement of the
+   * query
+   */
+  protected boolean canSendStatementsInOneQuery() {
+    return false;
+  }
+
+  /**
+   * The largest statement, in bytes, that a multi-row INSERT rewritten from a batch may take, which must fit in what
+   * the database accepts by default
+   */
+  protected int maxBatchMessageSize() {
+    return BaseSQLClient.MAXIMUM_MESSAGE_SIZE;
+  }
+
   @Override
   public SQLConnection call(String sql, Handler<AsyncResult<ResultSet>> resultHandler) {
     throw new UnsupportedOperationException("Not implemented");
@@ -80,6 +110,7 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
     synchronized (this) {
       if (inTransaction && autoCommit) {
         inTransaction = false;
+        abortCause = null;
         fut = ConversionUtils.completableFutureToVertxVoid(connection.sendQuery("COMMIT"), vertx);
       } else {
         fut = Future.succeededFuture();
@@ -94,8 +125,8 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
 
   @Override
   public SQLConnection execute(String sql, Handler<AsyncResult<Void>> handler) {
-    beginTransactionIfNeeded(v -> {
-      ConversionUtils.connectCompletableFutureWithVoidHandler(connection.sendQuery(sql), vertx, handler);
+    sendQuery(sql, future -> {
+      ConversionUtils.connectCompletableFutureWithVoidHandler(future, vertx, handler);
     });
 
     return this;
@@ -103,9 +134,9 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
 
   @Override
   public SQLConnection query(String sql, Handler<AsyncResult<ResultSet>> handler) {
-    beginTransactionIfNeeded(v -> {
+    sendQuery(sql, future -> {
       ConversionUtils.connectCompletableFutureWithHandler(
-        connection.sendQuery(sql),
+        future,
         vertx,
         handleAsyncQueryResultToResultSet(handler));
     });
@@ -115,9 +146,9 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
 
   @Override
   public SQLConnection queryStream(String sql, Handler<AsyncResult<SQLRowStream>> handler) {
-    beginTransactionIfNeeded(v -> {
+    sendQuery(sql, future -> {
       ConversionUtils.connectCompletableFutureWithHandler(
-        connection.sendQuery(sql),
+        future,
         vertx,
         handleAsyncQueryResultToRowStream(handler));
     });
@@ -129,7 +160,7 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
   public SQLConnection queryWithParams(String sql, JsonArray params, Handler<AsyncResult<ResultSet>> handler) {
     beginTransactionIfNeeded(v -> {
       ConversionUtils.connectCompletableFutureWithHandler(
-        connection.sendPreparedStatement(sql, ConversionUtils.WrapList(params)),
+        sendPreparedStatement(sql, params),
         vertx,
         handleAsyncQueryResultToResultSet(handler));
     });
@@ -141,7 +172,7 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
   public SQLConnection queryStreamWithParams(String sql, JsonArray params, Handler<AsyncResult<SQLRowStream>> handler) {
     beginTransactionIfNeeded(v -> {
       ConversionUtils.connectCompletableFutureWithHandler(
-        connection.sendPreparedStatement(sql, ConversionUtils.WrapList(params)),
+        sendPreparedStatement(sql, params),
         vertx,
         handleAsyncQueryResultToRowStream(handler));
     });
@@ -151,9 +182,9 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
 
   @Override
   public SQLConnection update(String sql, Handler<AsyncResult<UpdateResult>> handler) {
-    beginTransactionIfNeeded(v -> {
+    sendQuery(sql, future -> {
       ConversionUtils.connectCompletableFutureWithHandler(
-        connection.sendQuery(sql),
+        future,
         vertx,
         handleAsyncUpdateResultToResultSet(handler));
     });
@@ -165,7 +196,7 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
   public SQLConnection updateWithParams(String sql, JsonArray params, Handler<AsyncResult<UpdateResult>> handler) {
     beginTransactionIfNeeded(v -> {
       ConversionUtils.connectCompletableFutureWithHandler(
-        connection.sendPreparedStatement(sql, ConversionUtils.WrapList(params)),
+        sendPreparedStatement(sql, params),
         vertx,
         handleAsyncUpdateResultToResultSet(handler));
     });
@@ -176,19 +207,38 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
   @Override
   public synchronized void close(Handler<AsyncResult<Void>> handler) {
     inAutoCommit = true;
+    abortCause = null;
     if (inTransaction) {
       inTransaction = false;
       Future<QueryResult> future = ConversionUtils.completableFutureToVertx(connection.sendQuery("COMMIT"), vertx);
       future.setHandler((v) -> {
-        pool.giveBack(connection);
+        giveBack();
         handler.handle(Future.succeededFuture());
       });
     } else {
-      pool.giveBack(connection);
+      giveBack();
       handler.handle(Future.succeededFuture());
     }
   }
 
+  /**
+   * Gives the connection back to the pool, once the statements evicted from its cache are closed on the server. They
+   * are closed here rather than before the next statement, so that closing them is never on the path of a request.
+   */
+  private void giveBack() {
+    List<String> evicted = preparedStatements != null ? preparedStatements.drainEvicted() : Collections.emptyList();
+    if (evicted.isEmpty()) {
+      pool.giveBack(connection);
+      return;
+    }
+    CompletableFuture<Boolean> released = CompletableFuture.completedFuture(true);
+    for (String sql : evicted) {
+      // a statement that cannot be closed stays prepared until the connection is closed
+      released = released.thenCompose(v -> connection.releasePreparedStatement(sql)).exceptionally(e -> false);
+    }
+    released.whenCompleteAsync((v, e) -> pool.giveBack(connection), ConversionUtils.vertxToExecutor(vertx));
+  }
+
   @Override
   public void close() {
     close((ar) -> {
@@ -198,12 +248,12 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
 
   @Override
   public SQLConnection commit(Handler<AsyncResult<Void>> handler) {
-    return endAndStartTransaction("COMMIT", handler);
+    return endTransaction("COMMIT", handler);
   }
 
   @Override
   public SQLConnection rollback(Handler<AsyncResult<Void>> handler) {
-    return endAndStartTransaction("ROLLBACK", handler);
+    return endTransaction("ROLLBACK", handler);
   }
 
   @Override
@@ -241,18 +291,118 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
     throw new UnsupportedOperationException("Not implemented");
   }
 
+  /**
+   * Runs the statements in a single query when the database allows it, which takes one round trip but only reports
+   * the number of rows affected by the last statement: the other statements are reported as
+   * {@link InsertBatch#SUCCESS_NO_INFO}. Otherwise the statements run one after the other, each one taking a round
+   * trip, since the drivers do not pipeline statements. They are chained on the connection without going back to the
+   * context in between.
+   */
   @Override
   public SQLConnection batch(List<String> sqlStatements, Handler<AsyncResult<List<Integer>>> handler) {
-    // This should be simple in postgres, since it is just append the query separator after each query and send as a big
-    // sql statement, however it does not seem to work on mysql
-    throw new UnsupportedOperationException("Not implemented");
+    if (sqlStatements.isEmpty()) {
+      handler.handle(Future.succeededFuture(new ArrayList<>()));
+      return this;
+    }
+    if (canSendStatementsInOneQuery()) {
+      // each statement ends on its own line, so that a trailing comment does not hide the next one
+      sendQuery(String.join("\n;\n", sqlStatements), future -> {
+        ConversionUtils.connectCompletableFutureWithHandler(future, vertx,
+          ar -> handler.handle(ar.map(qr -> batchCounts(sqlStatements.size(), qr.getRowsAffected()))));
+      });
+      return this;
+    }
+    beginTransactionIfNeeded(v -> {
+      ConversionUtils.connectCompletableFutureWithHandler(sendBatch(sqlStatements), vertx, handler);
+    });
+
+    return this;
+  }
+
+  private static List<Integer> batchCounts(int statements, long lastRowsAffected) {
+    List<Integer> counts = new ArrayList<>(Collections.nCopies(statements - 1, InsertBatch.SUCCESS_NO_INFO));
+    counts.add((int) lastRowsAffected);
+    return counts;
+  }
+
+  /**
+   * Sends the statements one after the other, stopping at the first failure.
+   *
+   * @return the number of rows affected by each statement
+   */
+  private CompletableFuture<List<Integer>> sendBatch(List<String> sqlStatements) {
+    Throwable aborted = abortCause();
+    if (aborted != null) {
+      return failedFuture(aborted);
+    }
+    List<Integer> counts = new ArrayList<>(sqlStatements.size());
+    CompletableFuture<List<Integer>> future = CompletableFuture.completedFuture(counts);
+    for (String sql : sqlStatements) {
+      future = future.thenCompose(previous -> connection.sendQuery(sql)).thenApply(qr -> {
+        counts.add((int) qr.getRowsAffected());
+        return counts;
+      });
+    }
+    return future;
   }
 
   @Override
   public SQLConnection batchWithParams(String sqlStatement, List<JsonArray> args, Handler<AsyncResult<List<Integer>>> handler) {
-    // This should be simple in postgres, since it is just append the query separator after each query and send as a big
-    // sql statement, however it does not seem to work on mysql
-    throw new UnsupportedOperationException("Not implemented");
+    beginTransactionIfNeeded(v -> {
+      Throwable aborted = abortCause();
+      if (aborted != null) {
+        handler.handle(Future.failedFuture(aborted));
+        return;
+      }
+      CompletableFuture<List<Integer>> future;
+      try {
+        InsertBatch insert = InsertBatch.of(sqlStatement);
+        future = insert != null ? sendInsertBatch(insert, args) : sendBatchWithParams(sqlStatement, args);
+      } catch (Throwable e) {
+        handler.handle(Future.failedFuture(e));
+        return;
+      }
+      ConversionUtils.connectCompletableFutureWithHandler(future, vertx, handler);
+    });
+
+    return this;
+  }
+
+  /**
+   * Sends the rows of a single-row INSERT as multi-row INSERT statements, one after the other.
+   *
+   * @return the number of rows affected by each row
+   */
+  private CompletableFuture<List<Integer>> sendInsertBatch(InsertBatch insert, List<JsonArray> args) {
+    List<Integer> counts = new ArrayList<>(args.size());
+    CompletableFuture<List<Integer>> future = CompletableFuture.completedFuture(counts);
+    for (List<JsonArray> rows : insert.split(args, maxBatchMessageSize())) {
+      future = future.thenCompose(previous -> sendPreparedStatement(insert.statement(rows.size()),
+        InsertBatch.parameters(rows)))
+        .thenApply(qr -> {
+          counts.addAll(InsertBatch.counts(rows.size(), qr.getRowsAffected()));
+          return counts;
+        });
+    }
+    return future;
+  }
+
+  /**
+   * Executes the prepared statement with each of the parameters, one after the other, stopping at the first failure.
+   *
+   * @return the number of rows affected by each execution
+   */
+  private CompletableFuture<List<Integer>> sendBatchWithParams(String sql, List<JsonArray> args) {
+    List<Integer> counts = new ArrayList<>(args.size());
+    CompletableFuture<List<Integer>> future = CompletableFuture.completedFuture(counts);
+    for (JsonArray params : args) {
+      future = future.thenCompose(previous -> sendPreparedStatement(sql, params))
+        .thenApply(qr -> {
+          counts.add((int) qr.getRowsAffected());
+          return counts;
+        });
+    }
+    return future;
   }
 
   @Override
@@ -267,24 +417,24 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
     return (C) connection;
   }
 
-  private SQLConnection endAndStartTransaction(String command, Handler<AsyncResult<Void>> handler) {
-    if (inTransaction) {
+  /**
+   * Ends the current transaction. The next transaction is only started by the next statement, so that ending a
+   * transaction before closing the connection takes a single round trip.
+   */
+  private SQLConnection endTransaction(String command, Handler<AsyncResult<Void>> handler) {
+    boolean end;
+    synchronized (this) {
+      end = inTransaction;
       inTransaction = false;
+      abortCause = null;
+    }
+    if (end) {
       ConversionUtils.completableFutureToVertx(connection.sendQuery(command), vertx).setHandler(
           ar -> {
             if (ar.failed()) {
               handler.handle(Future.failedFuture(ar.cause()));
             } else {
-              ConversionUtils.completableFutureToVertx(connection.sendQuery(getStartTransactionStatement()), vertx).setHandler(
-                  ar2 -> {
-                    if (ar2.failed()) {
-                      handler.handle(Future.failedFuture(ar.cause()));
-                    } else {
-                      inTransaction = true;
-                      handler.handle(Future.succeededFuture());
-                    }
-                  }
-              );
+              handler.handle(Future.succeededFuture());
             }
           });
     } else {
@@ -298,6 +448,75 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
     return this;
   }
 
+  /**
+   * Sends a prepared statement, keeping it prepared on the server when the cache of the connection allows it.
+   */
+  private CompletableFuture<QueryResult> sendPreparedStatement(String sql, JsonArray params) {
+    Throwable aborted = abortCause();
+    if (aborted != null) {
+      return failedFuture(aborted);
+    }
+    if (preparedStatements == null) {
+      return connection.sendPreparedStatement(sql, ConversionUtils.WrapList(params));
+    }
+    boolean keep = preparedStatements.use(sql);
+    return connection.sendPreparedStatement(sql, ConversionUtils.WrapList(params), !keep);
+  }
+
+  /**
+   * Sends a statement, unless the transaction is aborted.
+   */
+  private CompletableFuture<QueryResult> sendStatement(String sql) {
+    Throwable aborted = abortCause();
+    return aborted != null ? failedFuture(aborted) : connection.sendQuery(sql);
+  }
+
+  private synchronized Throwable abortCause() {
+    return abortCause;
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable cause) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(cause);
+    return future;
+  }
+
+  /**
+   * Sends a statement, starting the transaction first when needed. The statement starting the transaction is sent in
+   * the same query when the database allows it, which saves a round trip.
+   * <p>
+   * When that query fails, the transaction is aborted: whether or not the database started it, the next statements
+   * fail with the same error until the transaction is committed or rolled back, as they would in a transaction
+   * started on its own.
+   */
+  private void sendQuery(String sql, Handler<CompletableFuture<QueryResult>> action) {
+    boolean prepend;
+    synchronized (this) {
+      prepend = !inAutoCommit && !inTransaction && canPrependStartTransactionStatement();
+      if (prepend) {
+        inTransaction = true;
+      }
+    }
+    if (prepend) {
+      CompletableFuture<QueryResult> result = new CompletableFuture<>();
+      connection.sendQuery(getStartTransactionStatement() + "; " + sql).whenComplete((qr, error) -> {
+        if (error == null) {
+          result.complete(qr);
+          return;
+        }
+        synchronized (this) {
+          if (inTransaction) {
+            abortCause = error;
+          }
+        }
+        result.completeExceptionally(error);
+      });
+      action.handle(result);
+    } else {
+      beginTransactionIfNeeded(v -> action.handle(sendStatement(sql)));
+    }
+  }
+
   private synchronized void beginTransactionIfNeeded(Handler<AsyncResult<Void>> action) {
     if (!inAutoCommit && !inTransaction) {
       inTransaction = true;
@@ -24,16 +24,23 @@ import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.asyncsql.Priority;
 import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
 import io.vertx.ext.sql.SQLConnection;
 import kotlinx.coroutines.Dispatchers;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base class for the SQL client.
@@ -42,25 +49,128 @@ import java.util.Map;
  */
 public abstract class BaseSQLClient {
 
+  // the largest message exchanged with the database, in bytes
+  static final int MAXIMUM_MESSAGE_SIZE = 16777216;
+
   protected final Logger log = LoggerFactory.getLogger(this.getClass());
   protected final Vertx vertx;
 
   protected final JsonObject globalConfig;
   private long testTimeout;
+  // the named partitions, each with its own pool, populated at construction time
+  private final Map<String, AsyncConnectionPool> partitions = new HashMap<>();
+  private final ReplicaSet replicas;
+  private final HedgePolicy hedgePolicy;
 
   public BaseSQLClient(Vertx vertx, JsonObject globalConfig) {
     this.vertx = vertx;
     this.globalConfig = globalConfig;
+    this.replicas = new ReplicaSet(
+      globalConfig.getString("replicaLoadBalancing", ReplicaSet.DEFAULT_LOAD_BALANCING),
+      globalConfig.getLong("replicaEjectionTime", ReplicaSet.DEFAULT_EJECTION_TIME));
+    if (globalConfig.getBoolean("hedgeReads", false)) {
+      this.hedgePolicy = new HedgePolicy(
+        globalConfig.getDouble("hedgePercentile", HedgePolicy.DEFAULT_PERCENTILE),
+        globalConfig.getLong("hedgeMinDelay", HedgePolicy.DEFAULT_MIN_DELAY));
+    } else {
+      this.hedgePolicy = null;
+    }
   }
 
   protected abstract AsyncConnectionPool pool();
 
+  /**
+   * Creates a pool for the given configuration, used for the default pool and for each partition.
+   */
+  protected abstract AsyncConnectionPool createPool(JsonObject config, String poolName);
+
+  /**
+   * Creates a pool for each partition declared in the {@code partitions} object of the configuration. A partition
+   * shares the configuration of the client, overridden by its own entries such as {@code maxPoolSize}.
+   */
+  protected void createPartitions(String poolName) {
+    JsonObject declared = globalConfig.getJsonObject("partitions");
+    if (declared == null) {
+      return;
+    }
+    for (String name : declared.fieldNames()) {
+      JsonObject config = globalConfig.copy().mergeIn(declared.getJsonObject(name));
+      config.remove("partitions");
+      partitions.put(name, createPool(config, poolName + "/" + name));
+    }
+  }
+
+  /**
+   * Creates a pool for each replica listed in the {@code replicas} array of the configuration. A replica shares the
+   * configuration of the client, overridden by its own entries such as {@code host} and {@code port}.
+   */
+  protected void createReplicas(String poolName) {
+    JsonArray declared = globalConfig.getJsonArray("replicas");
+    if (declared == null) {
+      return;
+    }
+    for (int i = 0; i < declared.size(); i++) {
+      JsonObject config = globalConfig.copy();
+      // the failover hosts are the ones of the primary
+      config.remove("hosts");
+      config.mergeIn(declared.getJsonObject(i));
+      config.remove("partitions");
+      config.remove("replicas");
+      // the pool metrics are reported per endpoint
+      Integer port = config.getInteger("port");
+      String endpoint = config.getString("host") + (port != null ? ":" + port : "");
+      replicas.add(createPool(config, poolName + "/replica-" + endpoint));
+    }
+  }
+
+  public Set<String> partitionNames() {
+    return partitions.keySet();
+  }
+
+  /**
+   * @param partition the partition name, {@code null} for the default pool
+   */
+  protected AsyncConnectionPool pool(String partition) {
+    return partition == null ? pool() : partitions.get(partition);
+  }
+
+  /**
+   * @param partition the partition name, {@code null} for the default pool, whose statistics then include those of the
+   *                  partitions, of the replicas and of the hedged reads
+   * @return a snapshot of the statistics of the pool
+   */
+  public JsonObject getPoolStats(String partition) {
+    if (partition != null) {
+      return pool(partition).getStats();
+    }
+    JsonObject stats = pool().getStats();
+    if (!partitions.isEmpty()) {
+      JsonObject partitionStats = new JsonObject();
+      partitions.forEach((name, pool) -> partitionStats.put(name, pool.getStats()));
+      stats.put("partitions", partitionStats);
+    }
+    List<AsyncConnectionPool> replicaPools = replicas.pools();
+    if (!replicaPools.isEmpty()) {
+      JsonArray replicaStats = new JsonArray();
+      replicaPools.forEach(pool -> replicaStats.add(pool.getStats()));
+      stats.put("replicas", replicaStats);
+    }
+    if (hedgePolicy != null) {
+      stats.put("hedging", hedgePolicy.getStats());
+    }
+    return stats;
+  }
+
   protected abstract SQLConnection createFromPool(Connection conn, AsyncConnectionPool pool, Vertx vertx);
 
   public void getConnection(Handler<AsyncResult<SQLConnection>> handler) {
-    pool().take(ar -> {
+    getConnection(null, Priority.NORMAL, handler);
+  }
+
+  public void getConnection(String partition, Priority priority, Handler<AsyncResult<SQLConnection>> handler) {
+    final AsyncConnectionPool pool = pool(partition);
+    pool.take(priority, ar -> {
       if (ar.succeeded()) {
-        final AsyncConnectionPool pool = pool();
         handler.handle(Future.succeededFuture(createFromPool(ar.result(), pool, vertx)));
       } else {
         handler.handle(Future.failedFuture(ar.cause()));
@@ -68,26 +178,135 @@ public abstract class BaseSQLClient {
     });
   }
 
+  /**
+   * Gets a connection for a read-only statement: from a replica when the client has replicas, and from the default pool
+   * when it has none or when the replica cannot provide a connection.
+   */
+  public void getReadConnection(Priority priority, Handler<AsyncResult<SQLConnection>> handler) {
+    getReadConnection(replicas.select(), priority, handler);
+  }
+
+  /**
+   * @param excluded a replica pool that must not be selected, or {@code null}
+   * @return the pool of the replica that should serve the next read, {@code null} when there is no other replica
+   */
+  AsyncConnectionPool selectReplica(AsyncConnectionPool excluded) {
+    return replicas.select(excluded);
+  }
+
+  /**
+   * @return the policy hedging the reads, {@code null} when hedging is disabled or the client has fewer than two
+   * replicas to hedge between
+   */
+  HedgePolicy hedgePolicy() {
+    return replicas.size() > 1 ? hedgePolicy : null;
+  }
+
+  /**
+   * Gets a connection for a read-only statement from the given replica pool, falling back to the default pool when it
+   * is {@code null} or cannot provide a connection.
+   */
+  void getReadConnection(AsyncConnectionPool pool, Priority priority, Handler<AsyncResult<SQLConnection>> handler) {
+    if (pool == null) {
+      getConnection(null, priority, handler);
+      return;
+    }
+    pool.take(priority, ar -> {
+      if (ar.succeeded()) {
+        handler.handle(Future.succeededFuture(createFromPool(ar.result(), pool, vertx)));
+      } else {
+        log.debug("Could not get a connection from a replica, falling back to the primary", ar.cause());
+        getConnection(null, priority, handler);
+      }
+    });
+  }
+
+  /**
+   * Drains the default pool, the partitions and the replicas, and calls the handler once all of them are drained.
+   */
   public void close(Handler<AsyncResult<Void>> handler) {
     log.info("Stopping async SQL client " + this);
-    pool().close(ar -> {
-        if (ar.succeeded()) {
-          if (handler != null) {
-            handler.handle(Future.succeededFuture());
-          }
-        } else {
-          if (handler != null) {
-            handler.handle(Future.failedFuture(ar.cause()));
-          }
+    List<AsyncConnectionPool> pools = new ArrayList<>(partitions.values());
+    pools.addAll(replicas.pools());
+    pools.add(pool());
+    AtomicInteger remaining = new AtomicInteger(pools.size());
+    for (AsyncConnectionPool pool : pools) {
+      pool.close(ar -> {
+        if (remaining.decrementAndGet() == 0 && handler != null) {
+          handler.handle(Future.succeededFuture());
         }
-      }
-    );
+      });
+    }
   }
 
   public void close() {
     close(null);
   }
 
+  /**
+   * @return the configuration of the connections to each host of the {@code hosts} array of the configuration, given
+   * as {@code host} or {@code host:port}, in failover order, or to the single {@code host} when there is no such array
+   */
+  protected List<ConnectionPoolConfiguration> getConnectionConfigurations(
+    String defaultHost,
+    int defaultPort,
+    String defaultDatabase,
+    String defaultUser,
+    String defaultPassword,
+    String defaultCharset,
+    long defaultConnectTimeout,
+    long defaultTestTimeout,
+    JsonObject config) {
+
+    JsonArray hosts = config.getJsonArray("hosts");
+    if (hosts == null || hosts.isEmpty()) {
+      return Collections.singletonList(getConnectionConfiguration(defaultHost, defaultPort, defaultDatabase,
+        defaultUser, defaultPassword, defaultCharset, defaultConnectTimeout, defaultTestTimeout, config));
+    }
+    List<ConnectionPoolConfiguration> configurations = new ArrayList<>();
+    for (int i = 0; i < hosts.size(); i++) {
+      configurations.add(getConnectionConfiguration(defaultHost, defaultPort, defaultDatabase, defaultUser,
+        defaultPassword, defaultCharset, defaultConnectTimeout, defaultTestTimeout,
+        hostConfig(config, hosts.getString(i))));
+    }
+    return configurations;
+  }
+
+  /**
+   * @return the configuration with the {@code host} and {@code port} of an address of the {@code hosts} list, given as
+   * {@code host}, {@code host:port}, {@code [ipv6-address]} or {@code [ipv6-address]:port}
+   */
+  static JsonObject hostConfig(JsonObject config, String address) {
+    JsonObject hostConfig = config.copy();
+    String port = null;
+    if (address.startsWith("[")) {
+      int end = address.indexOf(']');
+      if (end < 0) {
+        throw new IllegalArgumentException("Invalid host address: " + address);
+      }
+      hostConfig.put("host", address.substring(1, end));
+      if (address.length() > end + 1) {
+        if (address.charAt(end + 1) != ':') {
+          throw new IllegalArgumentException("Invalid host address: " + address);
+        }
+        port = address.substring(end + 2);
+      }
+    } else {
+      int separator = address.indexOf(':');
+      if (separator >= 0 && separator == address.lastIndexOf(':')) {
+        hostConfig.put("host", address.substring(0, separator));
+        port = address.substring(separator + 1);
+      } else {
+        // a host name, or an IPv6 address without a port
+        hostConfig.put("host", address);
+      }
+    }
+    if (port != null) {
+      hostConfig.put("port", Integer.parseInt(port));
+    }
+    return hostConfig;
+  }
+
   protected ConnectionPoolConfiguration getConnectionConfiguration(
     String defaultHost,
     int defaultPort,
@@ -130,7 +349,7 @@ public abstract class BaseSQLClient {
       Dispatchers.getDefault(),
       new SSLConfiguration(sslConfig),
       charset,
-      16777216,
+      MAXIMUM_MESSAGE_SIZE,
       PooledByteBufAllocator.DEFAULT,
       applicationName);
   }
@@ -40,7 +40,7 @@ public class ClientHelper {
 
       ClientHolder theHolder = map.get(poolName);
       if (theHolder == null) {
-        theHolder = new ClientHolder(vertx, config, mySQL, () -> removeFromMap(vertx, map, poolName));
+        theHolder = new ClientHolder(vertx, config, mySQL, poolName, () -> removeFromMap(vertx, map, poolName));
         map.put(poolName, theHolder);
       } else {
         theHolder.incRefCount();
@@ -31,21 +31,23 @@ class ClientHolder implements Shareable {
   private final Vertx vertx;
   private final JsonObject config;
   private final boolean mySQL;
+  private final String poolName;
   private final Runnable closeRunner;
 
   private AsyncSQLClient client;
   private int refCount = 1;
 
-  ClientHolder(Vertx vertx, JsonObject config, boolean mySQL, Runnable closeRunner) {
+  ClientHolder(Vertx vertx, JsonObject config, boolean mySQL, String poolName, Runnable closeRunner) {
     this.vertx = vertx;
     this.config = config;
     this.mySQL = mySQL;
+    this.poolName = poolName;
     this.closeRunner = closeRunner;
   }
 
   synchronized AsyncSQLClient client() {
     if (client == null) {
-      client = new AsyncSQLClientImpl(vertx, config, mySQL);
+      client = new AsyncSQLClientImpl(vertx, config, mySQL, poolName);
     }
     return client;
   }
@@ -19,7 +19,9 @@ package io.vertx.ext.asyncsql.impl;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.asyncsql.AsyncSQLClient;
+import io.vertx.ext.asyncsql.Priority;
 import io.vertx.ext.sql.*;
 
 /**
@@ -47,17 +49,43 @@ public class ClientWrapper implements AsyncSQLClient {
     holder.close(null);
   }
 
+  @Override
+  public AsyncSQLClient partition(String name) {
+    return client.partition(name);
+  }
+
+  @Override
+  public AsyncSQLClient primary() {
+    return client.primary();
+  }
+
+  @Override
+  public JsonObject getPoolStats() {
+    return client.getPoolStats();
+  }
+
   @Override
   public SQLClient getConnection(Handler<AsyncResult<SQLConnection>> handler) {
     return client.getConnection(handler);
   }
 
+  @Override
+  public SQLClient getConnection(Priority priority, Handler<AsyncResult<SQLConnection>> handler) {
+    return client.getConnection(priority, handler);
+  }
+
   @Override
   public SQLClient query(String sql, Handler<AsyncResult<ResultSet>> handler) {
     client.query(sql, handler);
     return this;
   }
 
+  @Override
+  public SQLClient query(Priority priority, String sql, Handler<AsyncResult<ResultSet>> handler) {
+    client.query(priority, sql, handler);
+    return this;
+  }
+
   @Override
   public SQLClient queryStream(String sql, Handler<AsyncResult<SQLRowStream>> handler) {
     client.queryStream(sql, handler);
@@ -76,6 +104,13 @@ public class ClientWrapper implements AsyncSQLClient {
     return this;
   }
 
+  @Override
+  public SQLClient queryWithParams(Priority priority, String sql, JsonArray params,
+                                   Handler<AsyncResult<ResultSet>> handler) {
+    client.queryWithParams(priority, sql, params, handler);
+    return this;
+  }
+
   @Override
   public SQLClient update(String sql, Handler<AsyncResult<UpdateResult>> handler) {
     client.update(sql, handler);
@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a read sent to a replica is hedged: the delay after which a second attempt is sent to another replica
+ * is the {@code hedgePercentile} of the latencies of the last reads, and never less than {@code hedgeMinDelay}. The
+ * latencies are those of the first attempts, whether they won or not, so that hedging does not shorten its own delay.
+ */
+class HedgePolicy {
+
+  static final double DEFAULT_PERCENTILE = 95;
+  static final long DEFAULT_MIN_DELAY = 5;
+
+  private static final int SAMPLES = 1024;          // latencies kept to compute the percentile
+  private static final int MIN_SAMPLES = 64;        // no hedging until that many reads completed
+  private static final int REFRESH_INTERVAL = 64;   // reads between two computations of the delay
+
+  private final double percentile;
+  private final long minDelay;
+  private final long[] samples = new long[SAMPLES];
+  private long recorded;
+  private volatile long delay = -1;
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong wins = new AtomicLong();
+
+  HedgePolicy(double percentile, long minDelay) {
+    if (percentile <= 0 || percentile > 100) {
+      throw new IllegalArgumentException("hedgePercentile must be in (0, 100], got " + percentile);
+    }
+    this.percentile = percentile;
+    this.minDelay = minDelay;
+  }
+
+  /**
+   * @return the delay in milliseconds after which a read is hedged, {@code -1} while too few reads completed
+   */
+  long delay() {
+    return delay;
+  }
+
+  /**
+   * Records the latency of the first attempt of a read that completed successfully.
+   */
+  synchronized void record(long latency) {
+    samples[(int) (recorded % SAMPLES)] = latency;
+    recorded++;
+    if (recorded >= MIN_SAMPLES && recorded % REFRESH_INTERVAL == 0) {
+      int size = (int) Math.min(recorded, SAMPLES);
+      long[] sorted = Arrays.copyOf(samples, size);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100 * size) - 1;
+      delay = Math.max(minDelay, sorted[Math.max(0, index)]);
+    }
+  }
+
+  void hedged() {
+    hedges.incrementAndGet();
+  }
+
+  /**
+   * Counts a read answered by its second attempt.
+   */
+  void won() {
+    wins.incrementAndGet();
+  }
+
+  /**
+   * @return the number of second attempts sent so far
+   */
+  long getHedges() {
+    return hedges.get();
+  }
+
+  /**
+   * @return the number of reads answered by their second attempt so far
+   */
+  long getWins() {
+    return wins.get();
+  }
+
+  /**
+   * @return the number of latencies recorded so far
+   */
+  synchronized long getRecorded() {
+    return recorded;
+  }
+
+  /**
+   * @return a snapshot of the counters of the policy, named after their getters, and of the current delay
+   */
+  JsonObject getStats() {
+    return new JsonObject()
+      .put("delay", delay())
+      .put("hedges", getHedges())
+      .put("wins", getWins());
+  }
+}
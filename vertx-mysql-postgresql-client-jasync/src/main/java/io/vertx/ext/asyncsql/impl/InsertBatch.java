@@ -0,0 +1,146 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import io.vertx.core.json.JsonArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites a batch of executions of a single-row {@code INSERT ... VALUES (?, ...)} statement into multi-row
+ * {@code INSERT ... VALUES (?, ...), (?, ...)} statements, each one small enough to be sent in one message.
+ */
+class InsertBatch {
+
+  // the number of rows affected by a row of a multi-row statement, when the rows cannot be told apart (as in JDBC)
+  static final int SUCCESS_NO_INFO = -2;
+
+  // the parameters of a statement are counted on 16 bits by the PostgreSQL protocol
+  static final int MAX_PARAMETERS = Short.MAX_VALUE;
+
+  // an INSERT ending with a single VALUES tuple made of placeholders only
+  private static final Pattern SINGLE_ROW_INSERT = Pattern.compile(
+    "^(\\s*INSERT\\s+.*?\\s*VALUES\\s*)(\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\))\\s*;?\\s*$",
+    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+  private final String prefix;
+  private final String row;
+  private final int parametersPerRow;
+
+  private InsertBatch(String prefix, String row) {
+    this.prefix = prefix;
+    this.row = row;
+    this.parametersPerRow = (int) row.chars().filter(c -> c == '?').count();
+  }
+
+  /**
+   * @return the rewriter of the given statement, {@code null} when it cannot be rewritten
+   */
+  static InsertBatch of(String sql) {
+    Matcher matcher = SINGLE_ROW_INSERT.matcher(sql);
+    if (!matcher.matches() || matcher.group(1).indexOf('?') >= 0) {
+      return null;
+    }
+    return new InsertBatch(matcher.group(1), matcher.group(2));
+  }
+
+  /**
+   * Splits the rows into chunks that keep each statement under {@link #MAX_PARAMETERS} parameters and under the given
+   * message size, according to a pessimistic estimate of the size of the parameters.
+   *
+   * @return the rows of each statement, in order
+   */
+  List<List<JsonArray>> split(List<JsonArray> rows, long maxMessageSize) {
+    List<List<JsonArray>> chunks = new ArrayList<>();
+    List<JsonArray> chunk = new ArrayList<>();
+    long size = prefix.length();
+    for (JsonArray args : rows) {
+      if (args.size() != parametersPerRow) {
+        throw new IllegalArgumentException("Expected " + parametersPerRow + " parameters, got " + args.size());
+      }
+      long rowSize = row.length() + 1 + estimateSize(args);
+      if (!chunk.isEmpty()
+        && ((chunk.size() + 1) * parametersPerRow > MAX_PARAMETERS || size + rowSize > maxMessageSize)) {
+        chunks.add(chunk);
+        chunk = new ArrayList<>();
+        size = prefix.length();
+      }
+      chunk.add(args);
+      size += rowSize;
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  /**
+   * @return the statement inserting the given number of rows
+   */
+  String statement(int rows) {
+    StringBuilder builder = new StringBuilder(prefix.length() + rows * (row.length() + 1));
+    builder.append(prefix);
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append(row);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @return the parameters of the statement inserting the given rows
+   */
+  static JsonArray parameters(List<JsonArray> rows) {
+    JsonArray parameters = new JsonArray();
+    rows.forEach(parameters::addAll);
+    return parameters;
+  }
+
+  /**
+   * @return the number of rows affected by each of the rows of a statement, given the rows it affected in total
+   */
+  static List<Integer> counts(int rows, long affected) {
+    // all the rows were inserted, or some were skipped (INSERT IGNORE) and nobody knows which ones
+    int count = affected == rows ? 1 : SUCCESS_NO_INFO;
+    List<Integer> counts = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      counts.add(count);
+    }
+    return counts;
+  }
+
+  private static long estimateSize(JsonArray args) {
+    long size = 0;
+    for (Object value : args) {
+      // a length prefix, and up to 3 bytes per character of a string in UTF-8
+      size += 4;
+      if (value instanceof CharSequence) {
+        size += 3L * ((CharSequence) value).length();
+      } else if (value instanceof byte[]) {
+        size += ((byte[]) value).length;
+      } else if (value != null) {
+        size += 3L * value.toString().length();
+      }
+    }
+    return size;
+  }
+}
@@ -16,9 +16,12 @@
 
 package io.vertx.ext.asyncsql.impl;
 
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 
 import com.github.jasync.sql.db.Connection;
+import com.github.jasync.sql.db.ConnectionPoolConfiguration;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.asyncsql.MySQLClient;
@@ -33,11 +36,22 @@ import io.vertx.ext.sql.SQLConnection;
  */
 public class MYSQLClientImpl extends BaseSQLClient {
 
-  private final MysqlAsyncConnectionPool pool;
+  private final AsyncConnectionPool pool;
 
   public MYSQLClientImpl(Vertx vertx, JsonObject globalConfig) {
+    this(vertx, globalConfig, UUID.randomUUID().toString());
+  }
+
+  public MYSQLClientImpl(Vertx vertx, JsonObject globalConfig, String poolName) {
     super(vertx, globalConfig);
-    pool = new MysqlAsyncConnectionPool(vertx, globalConfig, getConnectionConfiguration(
+    pool = createPool(globalConfig, poolName);
+    createPartitions(poolName);
+    createReplicas(poolName);
+  }
+
+  @Override
+  protected AsyncConnectionPool createPool(JsonObject config, String poolName) {
+    List<ConnectionPoolConfiguration> hosts = getConnectionConfigurations(
         MySQLClient.DEFAULT_HOST,
         MySQLClient.DEFAULT_PORT,
         MySQLClient.DEFAULT_DATABASE,
@@ -46,7 +60,13 @@ public class MYSQLClientImpl extends BaseSQLClient {
         MySQLClient.DEFAULT_CHARSET,
         MySQLClient.DEFAULT_CONNECT_TIMEOUT,
         MySQLClient.DEFAULT_TEST_TIMEOUT,
-        globalConfig));
+        config);
+    AsyncConnectionPool pool = new MysqlAsyncConnectionPool(vertx, config, hosts.get(0), poolName);
+    pool.setHosts(hosts);
+    if (config.getBoolean("warmUpOnStart", AsyncConnectionPool.DEFAULT_WARM_UP_ON_START)) {
+      pool.warmUp();
+    }
+    return pool;
   }
 
   @Override
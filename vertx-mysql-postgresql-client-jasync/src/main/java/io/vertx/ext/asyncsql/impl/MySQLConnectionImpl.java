@@ -15,6 +15,10 @@ import sun.security.provider.certpath.Vertex;
  * @author <a href="http://www.campudus.com">Joern Bernhardt</a>.
  */
 public class MySQLConnectionImpl extends AsyncSQLConnectionImpl {
+
+  // the default max_allowed_packet of MySQL 5.7, larger packets being rejected by the server
+  private static final int MAX_ALLOWED_PACKET = 4194304;
+
   public MySQLConnectionImpl(Connection conn, AsyncConnectionPool pool, Vertx vertx) {
     super(conn, pool, vertx);
   }
@@ -24,6 +28,11 @@ public class MySQLConnectionImpl extends AsyncSQLConnectionImpl {
     return "BEGIN";
   }
 
+  @Override
+  protected int maxBatchMessageSize() {
+    return MAX_ALLOWED_PACKET;
+  }
+
   @Override
   protected UpdateResult queryResultToUpdateResult(QueryResult qr) {
     int affected = (int)qr.getRowsAffected();
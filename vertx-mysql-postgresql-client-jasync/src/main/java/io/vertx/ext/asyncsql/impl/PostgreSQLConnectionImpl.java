@@ -21,6 +21,17 @@ public class PostgreSQLConnectionImpl extends AsyncSQLConnectionImpl {
     return "BEGIN";
   }
 
+  @Override
+  protected boolean canPrependStartTransactionStatement() {
+    // a simple query may hold several statements, and reports the result of the last one
+    return true;
+  }
+
+  @Override
+  protected boolean canSendStatementsInOneQuery() {
+    return true;
+  }
+
     @Override
   protected UpdateResult queryResultToUpdateResult(QueryResult qr) {
     int affected = (int) qr.getRowsAffected();
@@ -0,0 +1,234 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pools of the read replicas of a client, and the policy balancing the reads over them.
+ * <p>
+ * Replicas whose requests mostly fail, or whose average latency is an outlier compared with the other replicas, are
+ * ejected from the balancing for {@code replicaEjectionTime} milliseconds. At most half of the replicas are ejected at
+ * the same time. A replica back in the balancing starts with a fresh average latency, and is not judged on its latency
+ * until it served a few requests again.
+ */
+class ReplicaSet {
+
+  static final String DEFAULT_LOAD_BALANCING = "ROUND_ROBIN";
+  static final long DEFAULT_EJECTION_TIME = 30_000;
+
+  private static final long EVALUATION_INTERVAL = 1_000;   // look for outliers at most once a second
+  private static final int EJECTION_MIN_REQUESTS = 5;       // requests in an interval needed to judge the error rate
+  private static final double EJECTION_ERROR_RATE = 0.5;    // eject replicas failing at least half of the requests
+  private static final double EJECTION_LATENCY_FACTOR = 3;  // eject replicas this many times slower than the median
+
+  enum LoadBalancing {
+    // each replica in turn
+    ROUND_ROBIN,
+    // the replica with the fewest connections in use and requests waiting
+    LEAST_CONNECTIONS,
+    // the best of two random replicas, by average latency weighted by the requests in flight
+    LATENCY;
+
+    static LoadBalancing of(String name) {
+      try {
+        return valueOf(name.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown replicaLoadBalancing: " + name
+          + ", expected one of ROUND_ROBIN, LEAST_CONNECTIONS or LATENCY");
+      }
+    }
+  }
+
+  private final List<Replica> replicas = new ArrayList<>();
+  private final LoadBalancing loadBalancing;
+  private final long ejectionTime;
+  private final AtomicInteger next = new AtomicInteger();
+  private volatile long nextEvaluation;
+
+  ReplicaSet(String loadBalancing, long ejectionTime) {
+    this.loadBalancing = LoadBalancing.of(loadBalancing);
+    this.ejectionTime = ejectionTime;
+  }
+
+  void add(AsyncConnectionPool pool) {
+    replicas.add(new Replica(pool));
+  }
+
+  boolean isEmpty() {
+    return replicas.isEmpty();
+  }
+
+  int size() {
+    return replicas.size();
+  }
+
+  /**
+   * @return the current time in milliseconds
+   */
+  long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * @return the pool of the replica that should serve the next read, {@code null} when there is no replica
+   */
+  AsyncConnectionPool select() {
+    return select(null);
+  }
+
+  /**
+   * @param excluded a pool that must not be selected, or {@code null}
+   * @return the pool of the replica that should serve the next read, {@code null} when there is no other replica
+   */
+  AsyncConnectionPool select(AsyncConnectionPool excluded) {
+    if (replicas.isEmpty()) {
+      return null;
+    }
+    long now = now();
+    if (now >= nextEvaluation) {
+      evaluate(now);
+    }
+    List<AsyncConnectionPool> candidates = new ArrayList<>(replicas.size());
+    for (Replica replica : replicas) {
+      if (replica.ejectedUntil <= now && replica.pool != excluded) {
+        candidates.add(replica.pool);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    switch (loadBalancing) {
+      case LEAST_CONNECTIONS:
+        AsyncConnectionPool selected = null;
+        int selectedLoad = Integer.MAX_VALUE;
+        for (AsyncConnectionPool pool : candidates) {
+          int load = inFlight(pool);
+          if (load < selectedLoad) {
+            selected = pool;
+            selectedLoad = load;
+          }
+        }
+        return selected;
+      case LATENCY:
+        if (candidates.size() == 1) {
+          return candidates.get(0);
+        }
+        // power of two choices: avoids the herd behaviour of always picking the best replica
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+          second++;
+        }
+        AsyncConnectionPool a = candidates.get(first);
+        AsyncConnectionPool b = candidates.get(second);
+        return score(a) <= score(b) ? a : b;
+      default:
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+  }
+
+  private static int inFlight(AsyncConnectionPool pool) {
+    return pool.getInUseCount() + pool.getWaitersCount();
+  }
+
+  private static double score(AsyncConnectionPool pool) {
+    return pool.getLatencyAverage() * (inFlight(pool) + 1);
+  }
+
+  /**
+   * Ejects the replicas whose error rate or latency over the last interval is an outlier.
+   */
+  private synchronized void evaluate(long now) {
+    if (now < nextEvaluation) {
+      return;
+    }
+    nextEvaluation = now + EVALUATION_INTERVAL;
+    int ejected = 0;
+    List<Double> latencies = new ArrayList<>();
+    for (Replica replica : replicas) {
+      if (replica.ejectedUntil > now) {
+        ejected++;
+        continue;
+      }
+      if (replica.ejectedUntil > 0) {
+        // back in the balancing: the latency of the replica before its ejection says nothing of its latency now
+        replica.ejectedUntil = 0;
+        replica.pool.resetLatency();
+        replica.probationUsages = replica.pool.getUsageCount() + EJECTION_MIN_REQUESTS;
+      }
+      if (replica.pool.getUsageCount() > 0 && !replica.onProbation()) {
+        latencies.add(replica.pool.getLatencyAverage());
+      }
+    }
+    Collections.sort(latencies);
+    double median = latencies.isEmpty() ? 0 : latencies.get(latencies.size() / 2);
+    for (Replica replica : replicas) {
+      long usages = replica.pool.getUsageCount();
+      long failures = replica.pool.getFailureCount();
+      long requests = (usages - replica.lastUsages) + (failures - replica.lastFailures);
+      long intervalFailures = failures - replica.lastFailures;
+      replica.lastUsages = usages;
+      replica.lastFailures = failures;
+      if (replica.ejectedUntil > now || ejected >= replicas.size() / 2) {
+        continue;
+      }
+      boolean failing = requests >= EJECTION_MIN_REQUESTS && intervalFailures >= EJECTION_ERROR_RATE * requests;
+      boolean slow = latencies.size() > 1 && usages > 0 && !replica.onProbation()
+        && replica.pool.getLatencyAverage() > EJECTION_LATENCY_FACTOR * median;
+      if (failing || slow) {
+        replica.ejectedUntil = now + ejectionTime;
+        ejected++;
+      }
+    }
+  }
+
+  /**
+   * @return the pools of all the replicas, ejected or not
+   */
+  synchronized List<AsyncConnectionPool> pools() {
+    List<AsyncConnectionPool> pools = new ArrayList<>();
+    replicas.forEach(replica -> pools.add(replica.pool));
+    return pools;
+  }
+
+  private static final class Replica {
+
+    final AsyncConnectionPool pool;
+    // the counters of the pool at the last evaluation, only accessed under the monitor of the replica set
+    long lastUsages;
+    long lastFailures;
+    // the usage count the pool must reach after a re-admission before the latency of the replica is judged again
+    long probationUsages;
+    volatile long ejectedUntil;
+
+    Replica(AsyncConnectionPool pool) {
+      this.pool = pool;
+    }
+
+    boolean onProbation() {
+      return pool.getUsageCount() < probationUsages;
+    }
+  }
+}
@@ -16,25 +16,119 @@
 
 package io.vertx.ext.asyncsql.impl.pool;
 
+import com.github.jasync.sql.db.Configuration;
 import com.github.jasync.sql.db.Connection;
 import com.github.jasync.sql.db.ConnectionPoolConfiguration;
+import io.netty.channel.EventLoop;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxException;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.spi.metrics.PoolMetrics;
+import io.vertx.core.spi.metrics.VertxMetrics;
+import io.vertx.ext.asyncsql.AcquireTimeoutException;
+import io.vertx.ext.asyncsql.CircuitBreakerOpenException;
+import io.vertx.ext.asyncsql.HostRejectedException;
+import io.vertx.ext.asyncsql.PoolClosedException;
+import io.vertx.ext.asyncsql.PoolExhaustedException;
+import io.vertx.ext.asyncsql.Priority;
 import io.vertx.ext.asyncsql.impl.ConversionUtils;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 /**
  * Manages a pool of connection.
+ * <p>
+ * By default the pool holds a single set of idle connections and waiters. When {@code eventLoopSharding} is enabled,
+ * each event loop gets its own shard (idle connections and waiters) so that callers running on different event loops
+ * do not contend on the same monitor. The {@code maxPoolSize} is shared by all the shards, and a shard that runs dry
+ * borrows idle connections from the other shards before queueing the request.
+ * <p>
+ * {@code eventLoopAffinity} implies sharding: connections are opened on the event loop of the caller and always return
+ * to the shard of their own event loop, so that callers mostly get connections driven by their own event loop.
+ * <p>
+ * Requests that cannot be served immediately wait in a queue bounded by {@code maxWaitQueueSize}, for at most
+ * {@code connectionAcquireTimeout} milliseconds. The queue has one lane per {@link Priority}, served by weighted
+ * round-robin so that lower priorities are not starved.
+ * <p>
+ * Connections idle for {@code connectionReleaseDelay} milliseconds are closed by a single periodic sweep over the idle
+ * connections. The pool never releases idle connections below {@code minPoolSize}, and {@link #warmUp()} opens that
+ * many connections upfront.
+ * <p>
+ * When a connection test timeout is configured, connections are tested before being handed out, unless they have been
+ * used successfully within the last {@code validationInterval} milliseconds. With {@code backgroundValidation}, idle
+ * connections are tested periodically instead, off the request path.
+ * <p>
+ * Connections older than {@code maxConnectionLifetime} (minus a random jitter, so that they do not all expire at once)
+ * are closed when they are given back or checked out, or by the idle connection sweep, and replaced by a connection
+ * opened in the background.
+ * <p>
+ * The pool reports to the Vert.x {@link PoolMetrics} of type {@code datasource} when metrics are enabled. It also keeps
+ * an exponentially weighted moving average of the time from a request for a connection to its return, and counts the
+ * requests that failed to get a connection, which clients use to balance the load over several pools.
+ * <p>
+ * With {@code adaptiveSizing}, the pool only opens connections up to a target size, which a periodic controller moves
+ * between {@code minPoolSize} and {@code maxPoolSize}: it grows additively while requests wait for connections, and
+ * shrinks multiplicatively while most of the connections are idle.
+ * <p>
+ * At most {@code maxConcurrentConnects} connections are opened at the same time for requests; the requests beyond that
+ * wait for a connection to be given back or for a connection attempt to complete.
+ * <p>
+ * Failed connection attempts are retried after {@code connectionRetryDelay}, or after an exponential backoff with full
+ * jitter bounded by {@code maxConnectionRetryDelay}. After {@code circuitBreakerThreshold} consecutive failures, the
+ * pool opens its circuit breaker: requests fail immediately until a single probe connection, attempted every
+ * {@code circuitBreakerResetTimeout} milliseconds, succeeds. A connection rejected by {@link #verify(Connection)}
+ * reached the database, so it neither counts as a failure nor closes the breaker.
+ * <p>
+ * With several hosts ({@link #setHosts(List)}), new connections are opened to the current host, and a failed
+ * connection attempt moves the pool to the next host of the list. The idle connections to the previous host are closed
+ * right away, and the connections in use are closed when they are given back. Every {@code hostCheckInterval}
+ * milliseconds, an idle connection to the current host is checked again, and the pool moves to the next host when the
+ * check reports a {@link HostRejectedException}.
+ * <p>
+ * Closing the pool drains it: new requests and the requests waiting for a connection fail with a
+ * {@link PoolClosedException}, idle connections are closed right away, and the connections in use are closed when
+ * they are given back. The close handler is called once all the connections are closed, or after
+ * {@code closeTimeout} milliseconds, when the connections still in use are closed anyway.
+ * <p>
+ * With a {@code leakDetectionThreshold}, a periodic sweep reports the connections in use for longer than that, once
+ * each, as they were probably never closed by the application. A fraction {@code leakDetectionSampleRate} of the
+ * requests record where the connection was requested, which the report includes.
+ * <p>
+ * With a {@code preparedStatementCacheMaxSize}, each connection keeps at most that many statements prepared on the
+ * server, see {@link PreparedStatementCache}. The pool counts the hits, misses and evictions of the caches of all its
+ * connections.
+ * <p>
+ * The {@code connectionSelectionPolicy} chooses which idle connection serves a request: the one idle for the longest
+ * time ({@code FIFO}), the one given back last ({@code LIFO}, which keeps a small hot set and lets the others expire),
+ * the one that passed a connection test most recently ({@code MOST_RECENTLY_VALIDATED}) or the longest ago
+ * ({@code LEAST_RECENTLY_VALIDATED}, so that the connection tests rotate over the idle connections). A connection
+ * counts as validated when it connects, and giving it back does not change when it was validated.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
@@ -44,6 +138,42 @@ public abstract class AsyncConnectionPool {
   public static final int DEFAULT_MAX_CONNECTION_RETRIES = 0;       // No connection retries by default
   public static final int DEFAULT_CONNECTION_RETRY_DELAY = 5_000;   // 5 seconds between retries by default
   public static final int DEFAULT_CONNECTION_RELEASE_DELAY = 0;     // never release idle connection by default
+  public static final boolean DEFAULT_EVENT_LOOP_SHARDING = false;  // a single shard by default
+  public static final boolean DEFAULT_EVENT_LOOP_AFFINITY = false;  // connections are opened on any event loop
+  public static final int DEFAULT_MAX_WAIT_QUEUE_SIZE = -1;         // unbounded wait queue by default
+  public static final long DEFAULT_CONNECTION_ACQUIRE_TIMEOUT = 0;  // wait for a connection forever by default
+  public static final int DEFAULT_MIN_POOL_SIZE = 0;                // no minimum number of connections by default
+  public static final boolean DEFAULT_WARM_UP_ON_START = false;     // open connections lazily by default
+
+  public static final long DEFAULT_VALIDATION_INTERVAL = 0;         // test connections on every checkout by default
+  public static final boolean DEFAULT_BACKGROUND_VALIDATION = false; // no background validation by default
+
+  public static final long DEFAULT_MAX_CONNECTION_LIFETIME = 0;     // connections live forever by default
+
+  public static final boolean DEFAULT_ADAPTIVE_SIZING = false;      // fixed pool size by default
+  public static final long DEFAULT_ADAPTIVE_SIZING_INTERVAL = 1_000; // resize at most once a second by default
+  public static final int DEFAULT_MAX_CONCURRENT_CONNECTS = -1;     // no limit on parallel connection attempts
+  public static final long DEFAULT_MAX_CONNECTION_RETRY_DELAY = 0;  // constant delay between retries by default
+  public static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 0;    // no circuit breaker by default
+  public static final long DEFAULT_CIRCUIT_BREAKER_RESET_TIMEOUT = 10_000; // 10 seconds between probes by default
+  public static final String DEFAULT_CONNECTION_SELECTION_POLICY = "FIFO"; // rotate over the idle connections
+  public static final long DEFAULT_CLOSE_TIMEOUT = 10_000;          // wait 10 seconds for connections in use on close
+  public static final long DEFAULT_LEAK_DETECTION_THRESHOLD = 0;    // no leak detection by default
+  public static final double DEFAULT_LEAK_DETECTION_SAMPLE_RATE = 0.1; // record where 1 request in 10 came from
+  public static final int DEFAULT_PREPARED_STATEMENT_CACHE_MAX_SIZE = -1;  // the driver keeps them all by default
+  public static final int DEFAULT_PREPARED_STATEMENT_CACHE_SQL_LIMIT = 2048; // longer statements are not kept prepared
+  public static final long DEFAULT_HOST_CHECK_INTERVAL = 30_000;    // check the current host every 30 seconds
+
+  private static final int CIRCUIT_CLOSED = 0;
+  private static final int CIRCUIT_OPEN = 1;
+  private static final int CIRCUIT_HALF_OPEN = 2;
+
+  private static final int WARM_UP_CONCURRENCY = 4;                 // connections opened in parallel when warming up
+  private static final double LIFETIME_JITTER = 0.1;                // up to 10% of the lifetime is cut off at random
+  private static final long ADAPTIVE_MAX_WAIT_TIME = 5;             // grow when requests waited longer on average (ms)
+  private static final double ADAPTIVE_MIN_USAGE = 0.5;             // shrink when fewer connections are in use
+  private static final double LATENCY_EWMA_WEIGHT = 0.2;            // weight of the latest usage in the latency average
+  private static final int[] LANE_WEIGHTS = {8, 4, 1};              // waiters served per round, by priority ordinal
 
   private static final Logger logger = LoggerFactory.getLogger(AsyncConnectionPool.class);
 
@@ -51,52 +181,711 @@ public abstract class AsyncConnectionPool {
   private final int maxConnectionRetries;
   private final int connectionRetryDelay;
   private final int connectionReleaseDelay;
+  private final boolean eventLoopSharding;
+  private final boolean eventLoopAffinity;
+  private final int maxWaitQueueSize;
+  private final long connectionAcquireTimeout;
+  private final int minPoolSize;
+  private final long validationInterval;
+  private final long maxConnectionLifetime;
+  private final int maxConcurrentConnects;
+  private final long maxConnectionRetryDelay;
+  private final int circuitBreakerThreshold;
+  private final long circuitBreakerResetTimeout;
+  private final SelectionPolicy selectionPolicy;
+  private final long closeTimeout;
+  private final long leakDetectionThreshold;
+  private final double leakDetectionSampleRate;
+  private final int preparedStatementCacheMaxSize;
+  private final int preparedStatementCacheSqlLimit;
+  private final long hostCheckInterval;
 
   protected final ConnectionPoolConfiguration connectionConfig;
+  // the hosts of the database in failover order, a single host unless setHosts was called
+  private volatile List<ConnectionPoolConfiguration> hosts;
+  private final AtomicInteger currentHost = new AtomicInteger();
+  private volatile long hostCheckTimerId = -1;
   protected final Vertx vertx;
 
-  private int poolSize = 0;
-  private final Deque<Connection> availableConnections = new ArrayDeque<>();
-  private final Deque<Handler<AsyncResult<Connection>>> waiters = new ArrayDeque<>();
-  private final Map<Connection,Long> timers = new HashMap<>();
+  private final AtomicInteger poolSize = new AtomicInteger();
+  private final AtomicInteger waitersCount = new AtomicInteger();
+  private final AtomicInteger[] laneWaitersCounts = new AtomicInteger[Priority.values().length];
+  private final Shard defaultShard = new Shard(null);
+  private final LongAdder affinityHits = new LongAdder();
+  private final LongAdder affinityMisses = new LongAdder();
+  private final Map<EventLoop, Shard> shards = new ConcurrentHashMap<>();
+  // the default shard followed by the shards of the event loops, replaced when a shard is added
+  private volatile List<Shard> shardList = Collections.singletonList(defaultShard);
+  private final Map<Connection, ConnectionState> states = new ConcurrentHashMap<>();
+  private final LongAdder validationsPerformed = new LongAdder();
+  private final LongAdder validationsSkipped = new LongAdder();
+  private final long validationTimerId;
+  private final long releaseTimerId;
+  private final long leakTimerId;
+  private final AtomicLong leakedCount = new AtomicLong();
+  private final AtomicLong preparedStatementHits = new AtomicLong();
+  private final AtomicLong preparedStatementMisses = new AtomicLong();
+  private final AtomicLong preparedStatementEvictions = new AtomicLong();
+  private final AtomicInteger inUseCount = new AtomicInteger();
+  private final AtomicInteger creatingCount = new AtomicInteger();
+  // the timers of the connection attempts waiting to be retried, with the action giving up each attempt
+  private final Map<Long, Runnable> retryTimers = new ConcurrentHashMap<>();
+  private final AtomicInteger connectsInFlight = new AtomicInteger();
+  private final AtomicInteger circuitState = new AtomicInteger(CIRCUIT_CLOSED);
+  private final AtomicInteger consecutiveConnectFailures = new AtomicInteger();
+  private volatile long circuitTimerId = -1;
+  private final AtomicLong validationFailures = new AtomicLong();
+  private final LongAdder usageCount = new LongAdder();
+  private final AtomicLong failureCount = new AtomicLong();
+  // the average latency in milliseconds, NaN until the first sample
+  private volatile double latencyAverage = Double.NaN;
+  private final PoolMetrics<Object> metrics;
+  private final boolean adaptiveSizing;
+  private final long adaptiveSizingTimerId;
+  private volatile int targetPoolSize;
+  private final LongAdder waitTimeTotal = new LongAdder();
+  private final LongAdder waitTimeCount = new LongAdder();
+  private final AtomicLong growthsForWaiters = new AtomicLong();
+  private final AtomicLong growthsForWaitTime = new AtomicLong();
+  private final AtomicLong shrinksForLowUsage = new AtomicLong();
+  private volatile boolean closed;
+  // the handlers to call once the pool is drained, null once they were called
+  private List<Handler<AsyncResult<Void>>> closeHandlers = new ArrayList<>();
+  private long drainTimerId = -1;
 
   public AsyncConnectionPool(Vertx vertx, JsonObject globalConfig, ConnectionPoolConfiguration connectionConfig) {
+    this(vertx, globalConfig, connectionConfig, UUID.randomUUID().toString());
+  }
+
+  public AsyncConnectionPool(Vertx vertx, JsonObject globalConfig, ConnectionPoolConfiguration connectionConfig,
+                             String poolName) {
     this.vertx = vertx;
+    for (int lane = 0; lane < laneWaitersCounts.length; lane++) {
+      laneWaitersCounts[lane] = new AtomicInteger();
+    }
     this.maxPoolSize = globalConfig.getInteger("maxPoolSize", DEFAULT_MAX_POOL_SIZE);
     this.maxConnectionRetries = globalConfig.getInteger("maxConnectionRetries", DEFAULT_MAX_CONNECTION_RETRIES);
     this.connectionRetryDelay = globalConfig.getInteger("connectionRetryDelay", DEFAULT_CONNECTION_RETRY_DELAY);
     this.connectionReleaseDelay = globalConfig.getInteger("connectionReleaseDelay", DEFAULT_CONNECTION_RELEASE_DELAY);
+    this.eventLoopAffinity = globalConfig.getBoolean("eventLoopAffinity", DEFAULT_EVENT_LOOP_AFFINITY);
+    this.eventLoopSharding = eventLoopAffinity
+      || globalConfig.getBoolean("eventLoopSharding", DEFAULT_EVENT_LOOP_SHARDING);
+    this.maxWaitQueueSize = globalConfig.getInteger("maxWaitQueueSize", DEFAULT_MAX_WAIT_QUEUE_SIZE);
+    this.connectionAcquireTimeout = globalConfig.getLong("connectionAcquireTimeout",
+      DEFAULT_CONNECTION_ACQUIRE_TIMEOUT);
+    this.minPoolSize = Math.min(globalConfig.getInteger("minPoolSize", DEFAULT_MIN_POOL_SIZE), maxPoolSize);
+    this.validationInterval = globalConfig.getLong("validationInterval", DEFAULT_VALIDATION_INTERVAL);
+    this.maxConnectionLifetime = globalConfig.getLong("maxConnectionLifetime", DEFAULT_MAX_CONNECTION_LIFETIME);
+    this.maxConcurrentConnects = globalConfig.getInteger("maxConcurrentConnects", DEFAULT_MAX_CONCURRENT_CONNECTS);
+    this.maxConnectionRetryDelay = globalConfig.getLong("maxConnectionRetryDelay", DEFAULT_MAX_CONNECTION_RETRY_DELAY);
+    this.circuitBreakerThreshold = globalConfig.getInteger("circuitBreakerThreshold",
+      DEFAULT_CIRCUIT_BREAKER_THRESHOLD);
+    this.circuitBreakerResetTimeout = globalConfig.getLong("circuitBreakerResetTimeout",
+      DEFAULT_CIRCUIT_BREAKER_RESET_TIMEOUT);
+    this.selectionPolicy = SelectionPolicy.of(
+      globalConfig.getString("connectionSelectionPolicy", DEFAULT_CONNECTION_SELECTION_POLICY));
+    this.closeTimeout = globalConfig.getLong("closeTimeout", DEFAULT_CLOSE_TIMEOUT);
+    this.leakDetectionThreshold = globalConfig.getLong("leakDetectionThreshold", DEFAULT_LEAK_DETECTION_THRESHOLD);
+    this.leakDetectionSampleRate = globalConfig.getDouble("leakDetectionSampleRate",
+      DEFAULT_LEAK_DETECTION_SAMPLE_RATE);
+    this.preparedStatementCacheMaxSize = globalConfig.getInteger("preparedStatementCacheMaxSize",
+      DEFAULT_PREPARED_STATEMENT_CACHE_MAX_SIZE);
+    this.preparedStatementCacheSqlLimit = globalConfig.getInteger("preparedStatementCacheSqlLimit",
+      DEFAULT_PREPARED_STATEMENT_CACHE_SQL_LIMIT);
+    this.hostCheckInterval = globalConfig.getLong("hostCheckInterval", DEFAULT_HOST_CHECK_INTERVAL);
     this.connectionConfig = connectionConfig;
+    this.hosts = Collections.singletonList(connectionConfig);
+    if (connectionReleaseDelay > 0 || maxConnectionLifetime > 0) {
+      // idle connections are released between connectionReleaseDelay and 1.5 times connectionReleaseDelay, and retired
+      // at most a tenth of their lifetime after it ended
+      long releasePeriod = connectionReleaseDelay > 0 ? connectionReleaseDelay / 2 : Long.MAX_VALUE;
+      long retirePeriod = maxConnectionLifetime > 0 ? (long) (maxConnectionLifetime * LIFETIME_JITTER) : Long.MAX_VALUE;
+      this.releaseTimerId = vertx.setPeriodic(Math.max(1, Math.min(releasePeriod, retirePeriod)),
+        id -> releaseIdleConnections());
+    } else {
+      this.releaseTimerId = -1;
+    }
+    if (validationInterval > 0 && testTimeout() > 0
+      && globalConfig.getBoolean("backgroundValidation", DEFAULT_BACKGROUND_VALIDATION)) {
+      this.validationTimerId = vertx.setPeriodic(validationInterval, id -> validateIdleConnections());
+    } else {
+      this.validationTimerId = -1;
+    }
+    if (leakDetectionThreshold > 0) {
+      // leaks are reported between leakDetectionThreshold and 1.5 times leakDetectionThreshold
+      this.leakTimerId = vertx.setPeriodic(Math.max(1, leakDetectionThreshold / 2), id -> detectLeaks());
+    } else {
+      this.leakTimerId = -1;
+    }
+    this.metrics = createMetrics(vertx, poolName, maxPoolSize);
+    this.adaptiveSizing = globalConfig.getBoolean("adaptiveSizing", DEFAULT_ADAPTIVE_SIZING);
+    this.targetPoolSize = maxPoolSize;
+    if (adaptiveSizing) {
+      long interval = globalConfig.getLong("adaptiveSizingInterval", DEFAULT_ADAPTIVE_SIZING_INTERVAL);
+      this.adaptiveSizingTimerId = vertx.setPeriodic(interval, id -> resize());
+    } else {
+      this.adaptiveSizingTimerId = -1;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static PoolMetrics<Object> createMetrics(Vertx vertx, String poolName, int maxPoolSize) {
+    if (vertx instanceof VertxInternal) {
+      VertxMetrics vertxMetrics = ((VertxInternal) vertx).metricsSPI();
+      if (vertxMetrics != null) {
+        return (PoolMetrics<Object>) vertxMetrics.createPoolMetrics("datasource", poolName, maxPoolSize);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sets the hosts of the database, in failover order. Must be called before the pool is used.
+   */
+  public void setHosts(List<ConnectionPoolConfiguration> hosts) {
+    if (hosts.isEmpty()) {
+      throw new IllegalArgumentException("At least one host is required");
+    }
+    this.hosts = new ArrayList<>(hosts);
+    this.currentHost.set(0);
+    long previousTimerId = hostCheckTimerId;
+    if (previousTimerId != -1) {
+      vertx.cancelTimer(previousTimerId);
+      hostCheckTimerId = -1;
+    }
+    if (hosts.size() > 1 && hostCheckInterval > 0) {
+      hostCheckTimerId = vertx.setPeriodic(hostCheckInterval, id -> checkCurrentHost());
+    }
+  }
+
+  /**
+   * @return whether the pool may fail over to another host
+   */
+  protected boolean hasFailoverHosts() {
+    return hosts.size() > 1;
+  }
+
+  /**
+   * @return the configuration of the connections to the current host
+   */
+  protected Configuration connectionConfiguration() {
+    ConnectionPoolConfiguration host = hosts.get(currentHost.get());
+    return host != null ? host.getConnectionConfiguration() : null;
+  }
+
+  /**
+   * @return the index of the current host in the failover list
+   */
+  public int getCurrentHost() {
+    return currentHost.get();
+  }
+
+  /**
+   * Checks a new connection before it joins the pool, for instance that it reached a writable node. A connection
+   * failing the check moves the pool to the next host, but is not held against the circuit breaker.
+   */
+  protected CompletableFuture<Connection> verify(Connection connection) {
+    return CompletableFuture.completedFuture(connection);
+  }
+
+  /**
+   * Moves to the next host after a failed connection attempt to the given host, unless another attempt already did.
+   */
+  private void hostFailed(int host) {
+    int next = (host + 1) % hosts.size();
+    if (hosts.size() > 1 && currentHost.compareAndSet(host, next)) {
+      logger.warn("Connection attempt to host " + host + " failed, failing over to host " + next);
+      drainHost(host);
+    }
+  }
+
+  /**
+   * Checks the most recently used idle connection to the current host with {@link #verify(Connection)}, so that the
+   * pool moves to the next host when the current one stops accepting connections while it is still reachable, for
+   * instance a primary demoted to a standby.
+   */
+  private void checkCurrentHost() {
+    if (closed) {
+      return;
+    }
+    int host = currentHost.get();
+    for (Shard shard : allShards()) {
+      Connection connection = shard.pollLatestIdle(c -> isOnHost(c, host));
+      if (connection != null) {
+        verify(connection).whenCompleteAsync((verified, error) -> {
+          Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+          if (cause instanceof HostRejectedException) {
+            logger.warn("Host " + host + " rejected an idle connection", cause);
+            hostFailed(host);
+          }
+          recycle(connection);
+        }, ConversionUtils.vertxToExecutor(vertx));
+        return;
+      }
+    }
+  }
+
+  /**
+   * Closes the idle connections to a host the pool moved away from. The connections in use are closed when they are
+   * given back.
+   */
+  private void drainHost(int host) {
+    boolean drained = false;
+    for (Shard shard : allShards()) {
+      for (Connection connection : shard.pollIdle(c -> isOnHost(c, host))) {
+        discard(connection);
+        connection.disconnect();
+        drained = true;
+      }
+    }
+    if (drained) {
+      notifyWaitersAboutAvailableConnection();
+    }
+  }
+
+  private boolean isOnHost(Connection connection, int host) {
+    ConnectionState state = states.get(connection);
+    return state != null && state.host == host;
+  }
+
+  private boolean isOnPreviousHost(Connection connection) {
+    ConnectionState state = states.get(connection);
+    return state != null && state.host != currentHost.get();
   }
 
   protected abstract Connection create();
 
-  public synchronized int getPoolSize() {
-    return poolSize;
+  /**
+   * Creates a connection driven by the given event loop. Pools that cannot choose the event loop of their connections
+   * ignore it.
+   *
+   * @param eventLoop the event loop of the caller, {@code null} when any event loop fits
+   */
+  protected Connection create(EventLoop eventLoop) {
+    return create();
+  }
+
+  /**
+   * @return the configuration of the current host, with its connections driven by the given event loop, which also
+   * completes their futures so that callers on it never switch threads
+   */
+  protected Configuration connectionConfiguration(EventLoop eventLoop) {
+    Configuration configuration = connectionConfiguration();
+    // the driver has no builder for Configuration, and its copy() takes every field: AsyncConnectionPoolShardingTest
+    // checks that no field is dropped or misplaced here
+    return new Configuration(
+      configuration.getUsername(),
+      configuration.getHost(),
+      configuration.getPort(),
+      configuration.getPassword(),
+      configuration.getDatabase(),
+      configuration.getSsl(),
+      configuration.getCharset(),
+      configuration.getMaximumMessageSize(),
+      configuration.getAllocator(),
+      configuration.getConnectionTimeout(),
+      configuration.getQueryTimeout(),
+      configuration.getApplicationName(),
+      configuration.getInterceptors(),
+      eventLoop,
+      eventLoop);
+  }
+
+  public int getPoolSize() {
+    return poolSize.get();
+  }
+
+  /**
+   * @return the number of connection tests sent so far
+   */
+  public long getValidationsPerformed() {
+    return validationsPerformed.sum();
+  }
+
+  /**
+   * @return the number of connection tests skipped so far because the connection was used recently
+   */
+  public long getValidationsSkipped() {
+    return validationsSkipped.sum();
+  }
+
+  /**
+   * @return the number of connections that failed a connection test so far
+   */
+  public long getValidationFailures() {
+    return validationFailures.get();
+  }
+
+  /**
+   * @return the number of connections reported as leaked so far
+   */
+  public long getLeakedCount() {
+    return leakedCount.get();
+  }
+
+  /**
+   * @return the number of prepared statements found prepared on their connection so far
+   */
+  public long getPreparedStatementHits() {
+    return preparedStatementHits.get();
+  }
+
+  /**
+   * @return the number of prepared statements that had to be prepared on their connection so far
+   */
+  public long getPreparedStatementMisses() {
+    return preparedStatementMisses.get();
+  }
+
+  /**
+   * @return the number of prepared statements closed to make room for others so far
+   */
+  public long getPreparedStatementEvictions() {
+    return preparedStatementEvictions.get();
+  }
+
+  /**
+   * @return the cache of the statements prepared by the given connection of the pool, {@code null} when the driver
+   * manages them ({@code preparedStatementCacheMaxSize} is negative)
+   */
+  public PreparedStatementCache getPreparedStatementCache(Connection connection) {
+    ConnectionState state;
+    if (preparedStatementCacheMaxSize < 0 || (state = states.get(connection)) == null) {
+      return null;
+    }
+    if (state.preparedStatements == null) {
+      state.preparedStatements = new PreparedStatementCache(preparedStatementCacheMaxSize,
+        preparedStatementCacheSqlLimit, preparedStatementHits, preparedStatementMisses, preparedStatementEvictions);
+    }
+    return state.preparedStatements;
+  }
+
+  /**
+   * @return the number of connections given back after use so far
+   */
+  public long getUsageCount() {
+    return usageCount.sum();
+  }
+
+  /**
+   * @return the number of requests that could not get a connection, and of connections given back closed, so far
+   */
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  /**
+   * @return the moving average of the time in milliseconds between a request for a connection and its return, or
+   * {@code 0} before the first connection was given back
+   */
+  public double getLatencyAverage() {
+    double average = latencyAverage;
+    return Double.isNaN(average) ? 0 : average;
+  }
+
+  /**
+   * Forgets the average latency, so that the next connection given back sets it again.
+   */
+  public void resetLatency() {
+    latencyAverage = Double.NaN;
+  }
+
+  /**
+   * Updates the average without synchronization: a sample recorded concurrently may be lost, which a moving average
+   * tolerates better than connections given back spinning on the same field.
+   */
+  private void recordLatency(long latency) {
+    double previous = latencyAverage;
+    latencyAverage = Double.isNaN(previous) ? latency : previous + LATENCY_EWMA_WEIGHT * (latency - previous);
+  }
+
+  /**
+   * @return the number of open connections waiting to be taken
+   */
+  public int getIdleCount() {
+    int size = 0;
+    for (Shard shard : allShards()) {
+      size += shard.getIdleSize();
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of connections taken and not given back yet
+   */
+  public int getInUseCount() {
+    return inUseCount.get();
+  }
+
+  /**
+   * @return the number of requests waiting for a connection
+   */
+  public int getWaitersCount() {
+    return waitersCount.get();
+  }
+
+  /**
+   * @return the number of requests of the given priority waiting for a connection
+   */
+  public int getWaitersCount(Priority priority) {
+    return laneWaitersCounts[priority.ordinal()].get();
+  }
+
+  /**
+   * @return the number of connections being opened
+   */
+  public int getCreatingCount() {
+    return creatingCount.get();
+  }
+
+  /**
+   * @return the number of connections the pool may open, {@code maxPoolSize} unless adaptive sizing is enabled
+   */
+  public int getTargetPoolSize() {
+    return targetPoolSize;
+  }
+
+  /**
+   * @return how many times adaptive sizing grew the pool because requests were queued
+   */
+  public long getGrowthsForWaiters() {
+    return growthsForWaiters.get();
+  }
+
+  /**
+   * @return how many times adaptive sizing grew the pool because requests waited too long for a connection
+   */
+  public long getGrowthsForWaitTime() {
+    return growthsForWaitTime.get();
+  }
+
+  /**
+   * @return how many times adaptive sizing shrank the pool because most of the connections were idle
+   */
+  public long getShrinksForLowUsage() {
+    return shrinksForLowUsage.get();
   }
 
-  synchronized int getTimersSize() {
-    return timers.size();
+  /**
+   * @return the number of connections handed out on the event loop driving them, with {@code eventLoopAffinity}
+   */
+  public long getAffinityHits() {
+    return affinityHits.sum();
   }
 
-  private synchronized void createConnection(Handler<AsyncResult<Connection>> handler) {
-    poolSize += 1;
-    createAndConnect(new Handler<AsyncResult<Connection>>() {
+  /**
+   * @return the number of connections handed out on another event loop than the one driving them, with
+   * {@code eventLoopAffinity}
+   */
+  public long getAffinityMisses() {
+    return affinityMisses.sum();
+  }
+
+  /**
+   * @return a snapshot of the gauges and counters of the pool, named after their getters
+   */
+  public JsonObject getStats() {
+    JsonObject waitersByPriority = new JsonObject();
+    for (Priority priority : Priority.values()) {
+      waitersByPriority.put(priority.name(), getWaitersCount(priority));
+    }
+    return new JsonObject()
+      .put("poolSize", getPoolSize())
+      .put("targetPoolSize", getTargetPoolSize())
+      .put("idleCount", getIdleCount())
+      .put("inUseCount", getInUseCount())
+      .put("creatingCount", getCreatingCount())
+      .put("waitersCount", getWaitersCount())
+      .put("waitersCountByPriority", waitersByPriority)
+      .put("currentHost", getCurrentHost())
+      .put("usageCount", getUsageCount())
+      .put("failureCount", getFailureCount())
+      .put("latencyAverage", getLatencyAverage())
+      .put("validationsPerformed", getValidationsPerformed())
+      .put("validationsSkipped", getValidationsSkipped())
+      .put("validationFailures", getValidationFailures())
+      .put("growthsForWaiters", getGrowthsForWaiters())
+      .put("growthsForWaitTime", getGrowthsForWaitTime())
+      .put("shrinksForLowUsage", getShrinksForLowUsage())
+      .put("affinityHits", getAffinityHits())
+      .put("affinityMisses", getAffinityMisses())
+      .put("leakedCount", getLeakedCount())
+      .put("preparedStatementHits", getPreparedStatementHits())
+      .put("preparedStatementMisses", getPreparedStatementMisses())
+      .put("preparedStatementEvictions", getPreparedStatementEvictions());
+  }
+
+  int getShardsCount() {
+    return shards.size();
+  }
+
+  /**
+   * @return the shard of the event loop running the caller, or the default shard when sharding is disabled or the
+   * caller does not run on a Vert.x context
+   */
+  private Shard currentShard() {
+    return eventLoopSharding ? shardOf(currentEventLoop()) : defaultShard;
+  }
+
+  private Shard shardOf(EventLoop eventLoop) {
+    if (eventLoop == null) {
+      return defaultShard;
+    }
+    Shard shard = shards.get(eventLoop);
+    if (shard == null) {
+      shard = addShard(eventLoop);
+    }
+    return shard;
+  }
+
+  /**
+   * Creates the shard of an event loop, and publishes a new list of all the shards, which never changes otherwise.
+   */
+  private Shard addShard(EventLoop eventLoop) {
+    synchronized (shards) {
+      Shard shard = shards.get(eventLoop);
+      if (shard == null) {
+        shard = new Shard(eventLoop);
+        shards.put(eventLoop, shard);
+        List<Shard> list = new ArrayList<>(shardList);
+        list.add(shard);
+        shardList = Collections.unmodifiableList(list);
+      }
+      return shard;
+    }
+  }
+
+  /**
+   * @return the event loop running the caller, or {@code null} when the caller does not run on a Vert.x context
+   */
+  private static EventLoop currentEventLoop() {
+    Context context = Vertx.currentContext();
+    return context instanceof ContextInternal ? ((ContextInternal) context).nettyEventLoop() : null;
+  }
+
+  private List<Shard> allShards() {
+    return shardList;
+  }
+
+  private boolean reserveSlot() {
+    return reserveSlot(targetPoolSize);
+  }
+
+  /**
+   * Reserves a slot in the pool and, when {@code maxConcurrentConnects} is set, the right to open a connection now.
+   */
+  private boolean reserveCreation() {
+    if (!reserveSlot()) {
+      return false;
+    }
+    if (maxConcurrentConnects > 0) {
+      int count;
+      do {
+        count = connectsInFlight.get();
+        if (count >= maxConcurrentConnects) {
+          poolSize.decrementAndGet();
+          return false;
+        }
+      } while (!connectsInFlight.compareAndSet(count, count + 1));
+    }
+    return true;
+  }
+
+  private void releaseConnect() {
+    if (maxConcurrentConnects > 0) {
+      connectsInFlight.decrementAndGet();
+    }
+  }
+
+  private boolean reserveSlot(int limit) {
+    int size;
+    do {
+      size = poolSize.get();
+      if (size >= limit) {
+        return false;
+      }
+    } while (!poolSize.compareAndSet(size, size + 1));
+    return true;
+  }
+
+  /**
+   * Frees the slot of a connection about to be released, unless that would shrink the pool below {@code minPoolSize}.
+   */
+  private boolean releaseSlotAboveFloor() {
+    int size;
+    do {
+      size = poolSize.get();
+      if (size <= minPoolSize) {
+        return false;
+      }
+    } while (!poolSize.compareAndSet(size, size - 1));
+    return true;
+  }
+
+  private AcquireTimeoutException acquireTimeout() {
+    return new AcquireTimeoutException("Timeout of " + connectionAcquireTimeout
+      + " ms reached while waiting for a connection");
+  }
+
+  private boolean reserveWaiterSlot() {
+    if (maxWaitQueueSize < 0) {
+      waitersCount.incrementAndGet();
+      return true;
+    }
+    int count;
+    do {
+      count = waitersCount.get();
+      if (count >= maxWaitQueueSize) {
+        return false;
+      }
+    } while (!waitersCount.compareAndSet(count, count + 1));
+    return true;
+  }
+
+  private void createConnection(EventLoop eventLoop, Handler<AsyncResult<Connection>> handler) {
+    createAndConnect(eventLoop, new Handler<AsyncResult<Connection>>() {
       int retries = 0;
 
       @Override
       public void handle(AsyncResult<Connection> connectionResult) {
         if (connectionResult.succeeded()) {
+          releaseConnect();
+          if (maxConcurrentConnects > 0 && waitersCount.get() > 0 && poolSize.get() < targetPoolSize) {
+            // a request queued because of maxConcurrentConnects may open a connection now
+            notifyWaitersAboutAvailableConnection();
+          }
           handler.handle(connectionResult);
-        } else if (maxConnectionRetries < 0 || retries < maxConnectionRetries) {
+        } else if ((maxConnectionRetries < 0 || retries < maxConnectionRetries) && !isCircuitOpen() && !closed) {
           retries++;
-          logger.debug("Error creating connection. Waiting " + connectionRetryDelay + " ms for retry " +
+          long delay = retryDelay(retries);
+          logger.debug("Error creating connection. Waiting " + delay + " ms for retry " +
             retries + (maxConnectionRetries >= 0 ? " of " + maxConnectionRetries : ""));
-          vertx.setTimer(connectionRetryDelay, timerId ->
-            createAndConnect(this) // Try to connect again using this handler
-          );
+          // a pending retry counts as a connection being created, so that closing the pool waits for it
+          creatingCount.incrementAndGet();
+          AtomicBoolean pending = new AtomicBoolean(true);
+          Runnable abort = () -> {
+            if (pending.compareAndSet(true, false)) {
+              creatingCount.decrementAndGet();
+              handle(Future.failedFuture(new PoolClosedException("Connection pool closed while retrying to connect")));
+              completeCloseWhenDrained();
+            }
+          };
+          long retryTimerId = vertx.setTimer(delay, timerId -> {
+            retryTimers.remove(timerId);
+            if (closed) {
+              abort.run();
+            } else if (pending.compareAndSet(true, false)) {
+              creatingCount.decrementAndGet();
+              createAndConnect(eventLoop, this); // Try to connect again using this handler
+            }
+          });
+          retryTimers.put(retryTimerId, abort);
+          if (!pending.get()) {
+            retryTimers.remove(retryTimerId);
+          }
         } else {
-          poolSize -= 1;
+          poolSize.decrementAndGet();
+          releaseConnect();
           notifyWaitersAboutAvailableConnection();
           handler.handle(connectionResult);
         }
@@ -104,16 +893,111 @@ public abstract class AsyncConnectionPool {
     });
   }
 
-  private synchronized void createAndConnect(Handler<AsyncResult<Connection>> handler) {
+  /**
+   * @return the delay before the given retry: {@code connectionRetryDelay}, or a random delay up to
+   * {@code connectionRetryDelay * 2^(retry - 1)}, bounded by {@code maxConnectionRetryDelay}, when the latter is set
+   */
+  private long retryDelay(int retry) {
+    if (maxConnectionRetryDelay <= 0) {
+      return connectionRetryDelay;
+    }
+    long ceiling = Math.min(maxConnectionRetryDelay, (long) connectionRetryDelay << Math.min(retry - 1, 30));
+    return Math.max(1, (long) (ThreadLocalRandom.current().nextDouble() * ceiling));
+  }
+
+  private boolean isCircuitOpen() {
+    return circuitState.get() != CIRCUIT_CLOSED;
+  }
+
+  private void connectSucceeded() {
+    consecutiveConnectFailures.set(0);
+    if (circuitState.getAndSet(CIRCUIT_CLOSED) != CIRCUIT_CLOSED) {
+      logger.info("Connection attempt succeeded, closing the circuit breaker");
+    }
+  }
+
+  private void connectFailed() {
+    if (circuitBreakerThreshold <= 0) {
+      return;
+    }
+    if (consecutiveConnectFailures.incrementAndGet() >= circuitBreakerThreshold
+      && circuitState.compareAndSet(CIRCUIT_CLOSED, CIRCUIT_OPEN)
+      || circuitState.compareAndSet(CIRCUIT_HALF_OPEN, CIRCUIT_OPEN)) {
+      logger.warn("Opening the circuit breaker after " + consecutiveConnectFailures.get()
+        + " failed connection attempts");
+      scheduleProbe();
+    }
+  }
+
+  /**
+   * Opens the circuit breaker again after a probe that told nothing, without counting a failure.
+   */
+  private void probeInconclusive() {
+    if (circuitState.compareAndSet(CIRCUIT_HALF_OPEN, CIRCUIT_OPEN)) {
+      scheduleProbe();
+    }
+  }
+
+  private void scheduleProbe() {
+    if (!closed) {
+      circuitTimerId = vertx.setTimer(circuitBreakerResetTimeout, id -> probe());
+    }
+  }
+
+  /**
+   * Tries a single connection while the circuit breaker is open: its outcome closes the breaker, or opens it again.
+   */
+  private void probe() {
+    circuitTimerId = -1;
+    if (closed || !circuitState.compareAndSet(CIRCUIT_OPEN, CIRCUIT_HALF_OPEN)) {
+      return;
+    }
+    if (reserveSlot()) {
+      createInBackground(() -> {});
+      return;
+    }
+    // the pool is full: an idle connection is replaced by the probe
+    Connection connection = pollEldestAvailable();
+    if (connection != null) {
+      retire(connection);
+    } else {
+      probeInconclusive();
+    }
+  }
+
+  private void createAndConnect(EventLoop eventLoop, Handler<AsyncResult<Connection>> handler) {
+    creatingCount.incrementAndGet();
+    int host = currentHost.get();
+    AtomicBoolean connected = new AtomicBoolean();
     try {
-      create()
+      create(eventLoop)
         .connect()
+        .thenCompose(connection -> {
+          connected.set(true);
+          return verify(connection);
+        })
         .whenCompleteAsync((connection, error) -> {
+          creatingCount.decrementAndGet();
           try {
             if (error != null) {
               logger.info("failed to create connection", error);
+              if (connected.get()) {
+                // the database is reachable, but not usable through this host
+                probeInconclusive();
+              } else {
+                connectFailed();
+              }
+              hostFailed(host);
               handler.handle(Future.failedFuture(error));
+            } else if (closed) {
+              // the pool was closed while connecting
+              connection.disconnect();
+              handler.handle(Future.failedFuture(new PoolClosedException("Connection pool is closed")));
+              completeCloseWhenDrained();
             } else {
+              connectSucceeded();
+              long now = now();
+              states.put(connection, new ConnectionState(expiresAt(now), eventLoop, host, now));
               handler.handle(Future.succeededFuture(connection));
             }
           } catch (Throwable exception) {
@@ -126,127 +1010,903 @@ public abstract class AsyncConnectionPool {
           }
         }, ConversionUtils.vertxToExecutor(vertx));
     } catch (Throwable e) {
+      creatingCount.decrementAndGet();
       logger.info("creating a connection went wrong", e);
+      connectFailed();
+      hostFailed(host);
       handler.handle(Future.failedFuture(e));
     }
   }
 
-  private synchronized void waitForAvailableConnection(Handler<AsyncResult<Connection>> handler) {
-    waiters.add(handler);
+  /**
+   * Opens connections in the background until the pool holds {@code minPoolSize} of them, with at most
+   * {@link #WARM_UP_CONCURRENCY} connection attempts in flight. The new connections are made available to the
+   * requests waiting for one, or kept idle.
+   */
+  public void warmUp() {
+    for (int i = 0; i < Math.min(WARM_UP_CONCURRENCY, minPoolSize); i++) {
+      warmUpNext();
+    }
   }
 
-  private synchronized void createOrWaitForAvailableConnection(Handler<AsyncResult<Connection>> handler) {
-    if (poolSize < maxPoolSize) {
-      createConnection(handler);
-    } else {
-      waitForAvailableConnection(handler);
+  private void warmUpNext() {
+    if (reserveSlot(minPoolSize)) {
+      createInBackground(this::warmUpNext);
     }
   }
 
-  public synchronized void take(Handler<AsyncResult<Connection>> handler) {
-    Connection connection = availableConnections.poll();
-    if (connection == null) {
-      createOrWaitForAvailableConnection(handler);
+  /**
+   * Opens a connection for an already reserved slot, and hands it to a waiter or keeps it idle.
+   */
+  private void createInBackground(Runnable next) {
+    createAndConnect(null, ar -> {
+      if (ar.succeeded()) {
+        recycle(ar.result());
+        next.run();
+      } else {
+        poolSize.decrementAndGet();
+        notifyWaitersAboutAvailableConnection();
+      }
+    });
+  }
+
+  /**
+   * @return when a connection opened at the given time reaches its lifetime, or {@code 0} when connections live forever
+   */
+  private long expiresAt(long now) {
+    if (maxConnectionLifetime <= 0) {
+      return 0;
+    }
+    long jitter = (long) (ThreadLocalRandom.current().nextDouble() * LIFETIME_JITTER * maxConnectionLifetime);
+    return now + maxConnectionLifetime - jitter;
+  }
+
+  private boolean isExpired(Connection connection) {
+    return isExpired(connection, now());
+  }
+
+  private boolean isExpired(Connection connection, long now) {
+    ConnectionState state = states.get(connection);
+    return state != null && state.expiresAt > 0 && now >= state.expiresAt;
+  }
+
+  /**
+   * Closes a connection that reached its lifetime, or that is connected to a host the pool moved away from. Its
+   * replacement takes over its slot and is opened right away, so that the pool does not shrink.
+   */
+  private void retire(Connection connection) {
+    logger.debug("Retiring connection");
+    states.remove(connection);
+    connection.disconnect();
+    createInBackground(() -> {});
+  }
+
+  public void take(Handler<AsyncResult<Connection>> handler) {
+    take(Priority.NORMAL, handler);
+  }
+
+  public void take(Priority priority, Handler<AsyncResult<Connection>> handler) {
+    Waiter waiter = new Waiter(priority, handler);
+    if (closed) {
+      waiter.fail(new PoolClosedException("Connection pool is closed"));
+      return;
+    }
+    if (isCircuitOpen()) {
+      waiter.fail(new CircuitBreakerOpenException("Connection attempts keep failing, the circuit breaker is open"));
+      return;
+    }
+    currentShard().take(waiter);
+  }
+
+  private void checkout(Shard shard, Connection connection, Waiter waiter) {
+    if (!connection.isConnected()) {
+      discard(connection);
+      shard.take(waiter);
+    } else if (isExpired(connection) || isOnPreviousHost(connection)) {
+      retire(connection);
+      shard.take(waiter);
+    } else if (needsValidation(connection)) {
+      validationsPerformed.increment();
+      test(connection, alive -> {
+        if (alive) {
+          waiter.handle(Future.succeededFuture(connection));
+        } else {
+          shard.take(waiter);
+        }
+      });
     } else {
-      cancelTimer(connection);
-      if (connection.isConnected()) {
-        // Do connection test if connection test timeout is configured
-        if (connectionConfig != null && connectionConfig.getConnectionTestTimeout() > 0) {
-          AtomicBoolean testCompleted = new AtomicBoolean(false);
-          long timer = vertx.setTimer(connectionConfig.getConnectionTestTimeout(), ignored -> {
-            // check if the test request has completed or not, if not, try it again and drop the current connection
-            if (testCompleted.compareAndSet(false, true)) {
-              logger.info("connection test timeout");
-              connection.disconnect(); // drop the connection if it's still alive
-              synchronized (this) {
-                poolSize -= 1;
-              }
+      waiter.handle(Future.succeededFuture(connection));
+    }
+  }
 
-              take(handler);
-            }
-          });
-          connection.sendQuery("SELECT 1 AS alive")
-            .whenCompleteAsync((ignored, error) -> {
-              if (error != null) {
-                logger.info("connection test failed", error);
-                connection.disconnect(); // try to close the connection
-                synchronized (this) {
-                  poolSize -= 1;
-                }
-
-                take(handler);
-              } else {
-                // connection is good, however, need to check if the test query has timeout or not
-                // if timeout is not fired yet, then we will cleanup the timeout timer and return
-                // the connection, otherwise, we will skip this event, as timeout timer already
-                // drop the connection and retry
-                if (testCompleted.compareAndSet(false, true)) {
-                  // cleanup the timer
-                  if (this.connectionConfig.getConnectionTestTimeout() > 0) {
-                    vertx.cancelTimer(timer);
-                  }
-
-                  handler.handle(Future.succeededFuture(connection));
-                }
-              }
-            }, ConversionUtils.vertxToExecutor(vertx));
+  private long testTimeout() {
+    return connectionConfig != null ? connectionConfig.getConnectionTestTimeout() : 0;
+  }
+
+  /**
+   * Connections are only tested when a connection test timeout is configured, and when they have not been used
+   * successfully within the {@code validationInterval}.
+   */
+  private boolean needsValidation(Connection connection) {
+    if (testTimeout() <= 0) {
+      return false;
+    }
+    if (isStale(connection)) {
+      return true;
+    }
+    validationsSkipped.increment();
+    return false;
+  }
+
+  private boolean isStale(Connection connection) {
+    ConnectionState state = states.get(connection);
+    return validationInterval <= 0 || state == null
+      || now() - state.lastUsed > validationInterval;
+  }
+
+  private void touch(Connection connection) {
+    ConnectionState state = states.get(connection);
+    if (state != null) {
+      state.lastUsed = now();
+    }
+  }
+
+  /**
+   * Forgets a connection that is no longer part of the pool, and frees its slot.
+   */
+  private void discard(Connection connection) {
+    states.remove(connection);
+    poolSize.decrementAndGet();
+  }
+
+  /**
+   * Sends a test query on the connection. A connection failing the test, or not answering within the connection test
+   * timeout, is disconnected and discarded before the handler is called with {@code false}.
+   */
+  private void test(Connection connection, Handler<Boolean> handler) {
+    AtomicBoolean testCompleted = new AtomicBoolean(false);
+    long timer = vertx.setTimer(testTimeout(), ignored -> {
+      // check if the test request has completed or not, if not, drop the current connection
+      if (testCompleted.compareAndSet(false, true)) {
+        logger.info("connection test timeout");
+        validationFailures.incrementAndGet();
+        connection.disconnect(); // drop the connection if it's still alive
+        discard(connection);
+
+        handler.handle(false);
+      }
+    });
+    connection.sendQuery("SELECT 1 AS alive")
+      .whenCompleteAsync((ignored, error) -> {
+        if (error != null) {
+          logger.info("connection test failed", error);
+          validationFailures.incrementAndGet();
+          connection.disconnect(); // try to close the connection
+          discard(connection);
+
+          handler.handle(false);
         } else {
-          // No test connection timeout is configured, return the connection directly
-          handler.handle(Future.succeededFuture(connection));
+          // connection is good, however, need to check if the test query has timeout or not
+          // if timeout is not fired yet, then we will cleanup the timeout timer and return
+          // the connection, otherwise, we will skip this event, as timeout timer already
+          // drop the connection
+          if (testCompleted.compareAndSet(false, true)) {
+            // cleanup the timer
+            vertx.cancelTimer(timer);
+            touch(connection);
+            ConnectionState state = states.get(connection);
+            if (state != null) {
+              state.lastValidated = now();
+            }
+
+            handler.handle(true);
+          }
         }
-      } else {
-        poolSize -= 1;
-        take(handler);
+      }, ConversionUtils.vertxToExecutor(vertx));
+  }
+
+  /**
+   * Tests the idle connections that have not been used within the {@code validationInterval}, so that requests find
+   * connections that have been validated recently.
+   */
+  private void validateIdleConnections() {
+    for (Shard shard : allShards()) {
+      for (Connection connection : shard.pollIdle(this::isStale)) {
+        validationsPerformed.increment();
+        test(connection, alive -> {
+          if (alive) {
+            shard.giveBack(connection);
+          } else {
+            notifyWaitersAboutAvailableConnection();
+          }
+        });
       }
     }
   }
 
-  private synchronized void notifyWaitersAboutAvailableConnection() {
-    Handler<AsyncResult<Connection>> handler = waiters.poll();
-    if (handler != null) {
-      take(handler);
+  private void notifyWaitersAboutAvailableConnection() {
+    Shard shard = currentShard();
+    Waiter waiter = pollWaiter(shard);
+    if (waiter != null) {
+      shard.take(waiter);
     }
   }
 
-  private synchronized void cancelTimer(Connection connection) {
-    Long timerId = timers.remove(connection);
-    if (timerId != null) {
-      vertx.cancelTimer(timerId.longValue());
+  /**
+   * Polls a waiter of the given shard, or of any other shard when sharding is enabled.
+   */
+  private Waiter pollWaiter(Shard shard) {
+    Waiter waiter = shard.pollWaiter();
+    if (waiter == null && eventLoopSharding && waitersCount.get() > 0) {
+      for (Shard other : allShards()) {
+        if ((waiter = other.pollWaiter()) != null) {
+          break;
+        }
+      }
     }
+    return waiter;
   }
 
-  public synchronized void expire(Connection connection) {
-    cancelTimer(connection);
-    connection.disconnect();
-    availableConnections.remove(connection);
-    poolSize -= 1;
+  /**
+   * Moves the target size according to what happened since the previous call: one more connection when requests are
+   * queued or waited too long on average, a quarter less when less than half of the connections are in use.
+   */
+  private void resize() {
+    // a request served meanwhile may be counted in one sum and not in the other, which the average tolerates
+    long count = waitTimeCount.sumThenReset();
+    long total = waitTimeTotal.sumThenReset();
+    int target = targetPoolSize;
+    int floor = Math.max(minPoolSize, 1);
+    if (target < maxPoolSize && (waitersCount.get() > 0 || count > 0 && total / count > ADAPTIVE_MAX_WAIT_TIME)) {
+      (waitersCount.get() > 0 ? growthsForWaiters : growthsForWaitTime).incrementAndGet();
+      targetPoolSize = target + 1;
+      logger.debug("Growing the pool to " + targetPoolSize + " connections");
+      // the new slot is not used until a connection is given back, hand it to a waiter right away
+      notifyWaitersAboutAvailableConnection();
+    } else if (target > floor && waitersCount.get() == 0 && inUseCount.get() < ADAPTIVE_MIN_USAGE * target) {
+      shrinksForLowUsage.incrementAndGet();
+      targetPoolSize = Math.max(floor, target - Math.max(1, target / 4));
+      logger.debug("Shrinking the pool to " + targetPoolSize + " connections");
+      Connection connection;
+      while (poolSize.get() > targetPoolSize && (connection = pollEldestAvailable()) != null) {
+        connection.disconnect();
+        discard(connection);
+      }
+    }
   }
 
-  public synchronized void giveBack(Connection connection) {
-    if (connection.isConnected()) {
-      availableConnections.add(connection);
+  /**
+   * Polls the connection idle for the longest time from any shard, whatever the selection policy.
+   */
+  private Connection pollEldestAvailable() {
+    for (Shard shard : allShards()) {
+      Connection connection = shard.pollEldest();
+      if (connection != null) {
+        return connection;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Polls an idle connection from any shard but the given one.
+   */
+  private Connection borrowAvailable(Shard shard) {
+    for (Shard other : allShards()) {
+      if (other != shard) {
+        Connection connection = other.pollAvailable();
+        if (connection != null) {
+          return connection;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Hands idle connections of any shard over to waiters of any shard. A shard only queues a waiter after it
+   * incremented {@link #waitersCount}, and a shard always checks that counter after it stored an idle connection, so
+   * one of both sides is guaranteed to see the other.
+   */
+  private void transferIdleConnectionsToWaiters(Shard shard) {
+    while (waitersCount.get() > 0) {
+      Connection connection = shard.pollAvailable();
+      if (connection == null && (connection = borrowAvailable(shard)) == null) {
+        return;
+      }
+      Waiter waiter = pollWaiter(shard);
+      if (waiter == null) {
+        shard.offerAvailable(connection);
+        return;
+      }
+      checkout(shard, connection, waiter);
+    }
+  }
+
+  /**
+   * Reports the connections in use for longer than the {@code leakDetectionThreshold}.
+   */
+  private void detectLeaks() {
+    long now = now();
+    for (ConnectionState state : states.values()) {
+      long deadline = state.leakDeadline;
+      if (deadline > 0 && now >= deadline) {
+        state.leakDeadline = 0;
+        state.leaked = true;
+        leakedCount.incrementAndGet();
+        Throwable trace = state.acquisitionTrace;
+        String message = "Connection in use for " + (now - deadline + leakDetectionThreshold)
+          + " ms, it was probably not closed";
+        if (trace != null) {
+          logger.warn(message + ", it was requested at", trace);
+        } else {
+          logger.warn(message + ", raise leakDetectionSampleRate to know where it was requested");
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the current time in milliseconds, as seen by all the timestamps and deadlines of the pool
+   */
+  long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Closes the connections that have been idle for {@code connectionReleaseDelay}, and retires the idle connections
+   * that reached their lifetime, so that their replacements are opened before a request needs them.
+   */
+  void releaseIdleConnections() {
+    long now = now();
+    for (Shard shard : allShards()) {
       if (connectionReleaseDelay > 0) {
-        Long timerId = vertx.setTimer(connectionReleaseDelay, res -> expire(connection));
-        timers.put(connection, timerId);
+        shard.releaseIdle(now).forEach(Connection::disconnect);
+      }
+      if (maxConnectionLifetime > 0) {
+        shard.pollIdle(connection -> isExpired(connection, now)).forEach(this::retire);
+      }
+    }
+  }
+
+  public void expire(Connection connection) {
+    for (Shard shard : allShards()) {
+      if (shard.expire(connection)) {
+        return;
+      }
+    }
+  }
+
+  public void giveBack(Connection connection) {
+    ConnectionState state = states.get(connection);
+    if (state != null && state.inUse) {
+      state.inUse = false;
+      state.leakDeadline = 0;
+      if (state.leaked) {
+        state.leaked = false;
+        logger.info("Connection reported as leaked given back after " + (now() - state.takenAt) + " ms");
+      }
+      inUseCount.decrementAndGet();
+      recordLatency(now() - state.takenAt);
+      usageCount.increment();
+      if (!connection.isConnected()) {
+        failureCount.incrementAndGet();
+      }
+      if (metrics != null) {
+        metrics.end(state.usageMetric, connection.isConnected());
+        state.usageMetric = null;
+      }
+    }
+    recycle(connection);
+  }
+
+  /**
+   * Makes a connection available again, unless it is closed or too old.
+   */
+  private void recycle(Connection connection) {
+    if (closed) {
+      discard(connection);
+      connection.disconnect();
+      completeCloseWhenDrained();
+    } else if (connection.isConnected() && (isExpired(connection) || isOnPreviousHost(connection))) {
+      retire(connection);
+    } else if (connection.isConnected()) {
+      touch(connection);
+      ConnectionState state;
+      if (eventLoopAffinity && (state = states.get(connection)) != null && state.eventLoop != null) {
+        shardOf(state.eventLoop).giveBack(connection);
+      } else {
+        currentShard().giveBack(connection);
       }
     } else {
-      poolSize -= 1;
+      discard(connection);
+      notifyWaitersAboutAvailableConnection();
+    }
+  }
+
+  public void close() {
+    close(null);
+  }
+
+  /**
+   * Drains the pool, see the class documentation.
+   *
+   * @param handler called once the pool is drained, may be {@code null}
+   */
+  public void close(Handler<AsyncResult<Void>> handler) {
+    synchronized (this) {
+      if (closeHandlers == null) {
+        // already drained
+        if (handler != null) {
+          handler.handle(Future.succeededFuture());
+        }
+        return;
+      }
+      if (handler != null) {
+        closeHandlers.add(handler);
+      }
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    if (releaseTimerId != -1) {
+      vertx.cancelTimer(releaseTimerId);
+    }
+    if (leakTimerId != -1) {
+      vertx.cancelTimer(leakTimerId);
+    }
+    if (validationTimerId != -1) {
+      vertx.cancelTimer(validationTimerId);
+    }
+    if (adaptiveSizingTimerId != -1) {
+      vertx.cancelTimer(adaptiveSizingTimerId);
+    }
+    long hostCheckTimer = hostCheckTimerId;
+    if (hostCheckTimer != -1) {
+      vertx.cancelTimer(hostCheckTimer);
+    }
+    long circuitTimer = circuitTimerId;
+    if (circuitTimer != -1) {
+      vertx.cancelTimer(circuitTimer);
+    }
+    PoolClosedException rejection = new PoolClosedException("Connection pool closed while waiting for a connection");
+    for (Shard shard : allShards()) {
+      shard.pollWaiters().forEach(waiter -> waiter.fail(rejection));
+      for (Connection connection : shard.pollIdle(connection -> true)) {
+        discard(connection);
+        connection.disconnect();
+      }
+    }
+    for (Long retryTimerId : retryTimers.keySet()) {
+      Runnable abort = retryTimers.remove(retryTimerId);
+      if (abort != null) {
+        vertx.cancelTimer(retryTimerId);
+        abort.run();
+      }
+    }
+    synchronized (this) {
+      if (closeHandlers != null && (inUseCount.get() > 0 || creatingCount.get() > 0)) {
+        drainTimerId = vertx.setTimer(Math.max(1, closeTimeout), id -> forceClose());
+      }
+    }
+    completeCloseWhenDrained();
+  }
+
+  /**
+   * Closes the connections still in use when the {@code closeTimeout} is reached.
+   */
+  private void forceClose() {
+    synchronized (this) {
+      drainTimerId = -1;
+    }
+    logger.warn("Closing " + inUseCount.get() + " connections still in use after " + closeTimeout + " ms");
+    for (Map.Entry<Connection, ConnectionState> entry : states.entrySet()) {
+      if (entry.getValue().inUse) {
+        entry.getKey().disconnect();
+      }
+    }
+    completeClose();
+  }
+
+  private void completeCloseWhenDrained() {
+    if (inUseCount.get() == 0 && creatingCount.get() == 0) {
+      completeClose();
+    }
+  }
+
+  private void completeClose() {
+    List<Handler<AsyncResult<Void>>> handlers;
+    synchronized (this) {
+      if (!closed || closeHandlers == null) {
+        return;
+      }
+      handlers = closeHandlers;
+      closeHandlers = null;
+      if (drainTimerId != -1) {
+        vertx.cancelTimer(drainTimerId);
+        drainTimerId = -1;
+      }
     }
-    notifyWaitersAboutAvailableConnection();
+    if (metrics != null) {
+      metrics.close();
+    }
+    handlers.forEach(handler -> handler.handle(Future.succeededFuture()));
   }
 
-  public synchronized void close() {
-    for (long id : timers.values()) {
-      vertx.cancelTimer(id);
+  /**
+   * How an idle connection is chosen to serve a request.
+   */
+  enum SelectionPolicy {
+    FIFO, LIFO, MOST_RECENTLY_VALIDATED, LEAST_RECENTLY_VALIDATED;
+
+    static SelectionPolicy of(String name) {
+      try {
+        return valueOf(name.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown connectionSelectionPolicy: " + name
+          + ", expected one of FIFO, LIFO, MOST_RECENTLY_VALIDATED or LEAST_RECENTLY_VALIDATED");
+      }
     }
-    timers.clear();
-    availableConnections.forEach(Connection::disconnect);
   }
 
-  public synchronized void close(Handler<AsyncResult<Void>> handler) {
-    close();
-    if (handler != null) {
-      handler.handle(Future.succeededFuture());
+  /**
+   * What the pool knows about one of its connections.
+   */
+  private static final class ConnectionState {
+
+    final long expiresAt;
+    final EventLoop eventLoop;
+    // the index of the host of the connection in the failover list
+    final int host;
+    volatile long lastUsed;
+    // when the connection connected or last passed a connection test
+    volatile long lastValidated;
+    // when the connection was last made available, only accessed under the monitor of its shard
+    long idleSince;
+    // only accessed by the holder of the connection
+    boolean inUse;
+    long takenAt;
+    Object usageMetric;
+    PreparedStatementCache preparedStatements;
+    // when the connection in use is reported as leaked, 0 when it is not in use, already reported or not watched
+    volatile long leakDeadline;
+    // whether the connection in use was reported as leaked
+    volatile boolean leaked;
+    volatile Throwable acquisitionTrace;
+
+    ConnectionState(long expiresAt, EventLoop eventLoop, int host, long connectedAt) {
+      this.expiresAt = expiresAt;
+      this.eventLoop = eventLoop;
+      this.host = host;
+      this.lastUsed = connectedAt;
+      this.lastValidated = connectedAt;
+    }
+  }
+
+  /**
+   * A request for a connection. It keeps its acquisition deadline when it is queued again after a failed connection
+   * test, and only holds a timer while it sits in a queue.
+   */
+  private final class Waiter implements Handler<AsyncResult<Connection>> {
+
+    final Priority priority;
+    final Handler<AsyncResult<Connection>> handler;
+    final long deadline;
+    final Object queueMetric;
+    final long submitted = now();
+    final EventLoop eventLoop = eventLoopAffinity ? currentEventLoop() : null;
+    // where the connection was requested, only recorded for a sample of the requests when leaks are detected
+    final Throwable acquisitionTrace = leakDetectionThreshold > 0
+      && ThreadLocalRandom.current().nextDouble() < leakDetectionSampleRate
+      ? new Throwable("Connection requested") : null;
+    long timerId;
+
+    Waiter(Priority priority, Handler<AsyncResult<Connection>> handler) {
+      this.priority = priority;
+      this.handler = handler;
+      this.deadline = connectionAcquireTimeout > 0 ? submitted + connectionAcquireTimeout : 0;
+      this.queueMetric = metrics != null ? metrics.submitted() : null;
+    }
+
+    @Override
+    public void handle(AsyncResult<Connection> ar) {
+      if (ar.succeeded()) {
+        waitTimeTotal.add(now() - submitted);
+        waitTimeCount.increment();
+        ConnectionState state = states.get(ar.result());
+        if (state != null && eventLoop != null) {
+          (state.eventLoop == eventLoop ? affinityHits : affinityMisses).increment();
+        }
+        if (state != null) {
+          state.inUse = true;
+          state.takenAt = submitted;
+          if (leakDetectionThreshold > 0) {
+            state.acquisitionTrace = acquisitionTrace;
+            state.leakDeadline = now() + leakDetectionThreshold;
+          }
+          inUseCount.incrementAndGet();
+          if (metrics != null) {
+            state.usageMetric = metrics.begin(queueMetric);
+          }
+        }
+      } else {
+        failureCount.incrementAndGet();
+        if (metrics != null) {
+          metrics.rejected(queueMetric);
+        }
+      }
+      handler.handle(ar);
+    }
+
+    void fail(Throwable cause) {
+      handle(Future.failedFuture(cause));
+    }
+  }
+
+  /**
+   * The idle connections and waiters of one event loop (or of the whole pool when sharding is
+   * disabled). All the state of a shard is guarded by the shard monitor.
+   */
+  private class Shard {
+
+    // the event loop of the shard, null for the default shard
+    private final EventLoop eventLoop;
+    private final Deque<Connection> availableConnections = new ArrayDeque<>();
+    // one lane per priority, insertion ordered so that expired waiters are removed without scanning the queue
+    private final List<LinkedHashSet<Waiter>> lanes = new ArrayList<>();
+    // the waiters each lane may still be served in the current weighted round-robin round
+    private final int[] credits = LANE_WEIGHTS.clone();
+
+    Shard(EventLoop eventLoop) {
+      this.eventLoop = eventLoop;
+      for (int lane = 0; lane < LANE_WEIGHTS.length; lane++) {
+        lanes.add(new LinkedHashSet<>());
+      }
+    }
+
+    synchronized int getIdleSize() {
+      return availableConnections.size();
+    }
+
+    void take(Waiter waiter) {
+      Connection connection;
+      VertxException rejection = null;
+      synchronized (this) {
+        connection = pollAvailable();
+        if (connection == null && !eventLoopSharding && !reserveCreation() && (rejection = enqueue(waiter)) == null) {
+          return;
+        }
+      }
+      if (rejection != null) {
+        waiter.fail(rejection);
+        return;
+      }
+      if (connection == null && eventLoopSharding) {
+        // this shard ran dry, borrow from the other shards before opening a new connection
+        connection = borrowAvailable(this);
+        if (connection == null && !reserveCreation()) {
+          if ((rejection = enqueue(waiter)) != null) {
+            waiter.fail(rejection);
+          } else {
+            transferIdleConnectionsToWaiters(this);
+          }
+          return;
+        }
+      }
+      if (connection == null) {
+        createConnection(eventLoopAffinity ? eventLoop : null, waiter);
+      } else {
+        checkout(this, connection, waiter);
+      }
+    }
+
+    void giveBack(Connection connection) {
+      Waiter waiter;
+      synchronized (this) {
+        waiter = pollWaiter();
+        if (waiter == null) {
+          offerAvailable(connection);
+        }
+      }
+      if (waiter != null) {
+        checkout(this, connection, waiter);
+      } else if (eventLoopSharding) {
+        transferIdleConnectionsToWaiters(this);
+      }
+    }
+
+    synchronized Connection pollAvailable() {
+      switch (selectionPolicy) {
+        case LIFO:
+          return availableConnections.pollLast();
+        case MOST_RECENTLY_VALIDATED:
+          return pollByLastValidated(true);
+        case LEAST_RECENTLY_VALIDATED:
+          return pollByLastValidated(false);
+        default:
+          return availableConnections.poll();
+      }
+    }
+
+    synchronized Connection pollEldest() {
+      return availableConnections.poll();
+    }
+
+    /**
+     * Removes the idle connection validated most or least recently. The idle connections are scanned, their number is
+     * bounded by {@code maxPoolSize}.
+     */
+    private Connection pollByLastValidated(boolean mostRecently) {
+      Connection selected = null;
+      long selectedLastValidated = 0;
+      // scan from the most recently given back, so that ties go to the hottest connection
+      for (Iterator<Connection> iterator = availableConnections.descendingIterator(); iterator.hasNext(); ) {
+        Connection connection = iterator.next();
+        ConnectionState state = states.get(connection);
+        long lastValidated = state != null ? state.lastValidated : 0;
+        if (selected == null
+          || (mostRecently ? lastValidated > selectedLastValidated : lastValidated < selectedLastValidated)) {
+          selected = connection;
+          selectedLastValidated = lastValidated;
+        }
+      }
+      if (selected != null) {
+        availableConnections.removeLastOccurrence(selected);
+      }
+      return selected;
+    }
+
+    /**
+     * Removes the idle connections matching the filter, such as the connections that have not been used within the
+     * {@code validationInterval}.
+     */
+    synchronized List<Connection> pollIdle(Predicate<Connection> filter) {
+      List<Connection> polled = new ArrayList<>();
+      for (Iterator<Connection> iterator = availableConnections.iterator(); iterator.hasNext(); ) {
+        Connection connection = iterator.next();
+        if (filter.test(connection)) {
+          iterator.remove();
+          polled.add(connection);
+        }
+      }
+      return polled;
+    }
+
+    /**
+     * Removes the idle connection given back last among those matching the filter.
+     */
+    synchronized Connection pollLatestIdle(Predicate<Connection> filter) {
+      for (Iterator<Connection> iterator = availableConnections.descendingIterator(); iterator.hasNext(); ) {
+        Connection connection = iterator.next();
+        if (filter.test(connection)) {
+          iterator.remove();
+          return connection;
+        }
+      }
+      return null;
+    }
+
+    synchronized void offerAvailable(Connection connection) {
+      availableConnections.add(connection);
+      if (connectionReleaseDelay > 0) {
+        ConnectionState state = states.get(connection);
+        if (state != null) {
+          state.idleSince = now();
+        }
+      }
+    }
+
+    /**
+     * Removes the connections idle for {@code connectionReleaseDelay}, as long as the pool stays above
+     * {@code minPoolSize}.
+     *
+     * @return the removed connections, to be disconnected
+     */
+    synchronized List<Connection> releaseIdle(long now) {
+      List<Connection> released = new ArrayList<>();
+      for (Iterator<Connection> iterator = availableConnections.iterator(); iterator.hasNext(); ) {
+        Connection connection = iterator.next();
+        ConnectionState state = states.get(connection);
+        if (state != null && now - state.idleSince >= connectionReleaseDelay) {
+          if (!releaseSlotAboveFloor()) {
+            break;
+          }
+          iterator.remove();
+          states.remove(connection);
+          released.add(connection);
+        }
+      }
+      return released;
+    }
+
+    /**
+     * @return {@code null} when the waiter has been queued, otherwise the failure to report to the waiter
+     */
+    private synchronized VertxException enqueue(Waiter waiter) {
+      if (!reserveWaiterSlot()) {
+        return new PoolExhaustedException("Connection pool reached max wait queue size of " + maxWaitQueueSize);
+      }
+      long remaining = 0;
+      if (waiter.deadline > 0 && (remaining = waiter.deadline - now()) <= 0) {
+        waitersCount.decrementAndGet();
+        return acquireTimeout();
+      }
+      lanes.get(waiter.priority.ordinal()).add(waiter);
+      laneWaitersCounts[waiter.priority.ordinal()].incrementAndGet();
+      if (remaining > 0) {
+        waiter.timerId = vertx.setTimer(remaining, id -> expireWaiter(waiter));
+      }
+      return null;
+    }
+
+    private void expireWaiter(Waiter waiter) {
+      synchronized (this) {
+        if (!lanes.get(waiter.priority.ordinal()).remove(waiter)) {
+          return;
+        }
+        waitersCount.decrementAndGet();
+        laneWaitersCounts[waiter.priority.ordinal()].decrementAndGet();
+      }
+      waiter.fail(acquireTimeout());
+    }
+
+    /**
+     * Polls the next waiter by weighted round-robin: each round serves up to {@code LANE_WEIGHTS} waiters of each
+     * lane, highest priority first, and a new round starts when the lanes that still have waiters ran out of credits.
+     */
+    synchronized Waiter pollWaiter() {
+      int lane = nextLane();
+      if (lane < 0) {
+        System.arraycopy(LANE_WEIGHTS, 0, credits, 0, LANE_WEIGHTS.length);
+        if ((lane = nextLane()) < 0) {
+          return null;
+        }
+      }
+      credits[lane]--;
+      Iterator<Waiter> iterator = lanes.get(lane).iterator();
+      Waiter waiter = iterator.next();
+      iterator.remove();
+      waitersCount.decrementAndGet();
+      laneWaitersCounts[lane].decrementAndGet();
+      if (waiter.deadline > 0) {
+        vertx.cancelTimer(waiter.timerId);
+      }
+      return waiter;
+    }
+
+    private int nextLane() {
+      for (int lane = 0; lane < lanes.size(); lane++) {
+        if (credits[lane] > 0 && !lanes.get(lane).isEmpty()) {
+          return lane;
+        }
+      }
+      return -1;
+    }
+
+    synchronized boolean expire(Connection connection) {
+      if (!availableConnections.contains(connection)) {
+        return false;
+      }
+      // the pool keeps the connection when it is at its minimum size
+      if (releaseSlotAboveFloor()) {
+        availableConnections.remove(connection);
+        states.remove(connection);
+        connection.disconnect();
+      }
+      return true;
+    }
+
+    /**
+     * Removes all the waiters, to fail them.
+     */
+    synchronized List<Waiter> pollWaiters() {
+      List<Waiter> polled = new ArrayList<>();
+      Waiter waiter;
+      while ((waiter = pollWaiter()) != null) {
+        polled.add(waiter);
+      }
+      return polled;
     }
   }
 }
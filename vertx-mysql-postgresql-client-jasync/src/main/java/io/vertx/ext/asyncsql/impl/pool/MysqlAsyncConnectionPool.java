@@ -20,6 +20,7 @@ import com.github.jasync.sql.db.Connection;
 import com.github.jasync.sql.db.ConnectionPoolConfiguration;
 import com.github.jasync.sql.db.mysql.MySQLConnection;
 import com.github.jasync.sql.db.mysql.util.CharsetMapper;
+import io.netty.channel.EventLoop;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 
@@ -34,10 +35,26 @@ public class MysqlAsyncConnectionPool extends AsyncConnectionPool {
     super(vertx, globalConfig, connectionConfig);
   }
 
+  public MysqlAsyncConnectionPool(Vertx vertx, JsonObject globalConfig, ConnectionPoolConfiguration connectionConfig,
+                                   String poolName) {
+    super(vertx, globalConfig, connectionConfig, poolName);
+  }
+
   @Override
   protected Connection create() {
     return new MySQLConnection(
-      connectionConfig.getConnectionConfiguration(),
+      connectionConfiguration(),
+      CharsetMapper.Companion.getInstance()
+    );
+  }
+
+  @Override
+  protected Connection create(EventLoop eventLoop) {
+    if (eventLoop == null) {
+      return create();
+    }
+    return new MySQLConnection(
+      connectionConfiguration(eventLoop),
       CharsetMapper.Companion.getInstance()
     );
   }
@@ -18,11 +18,17 @@ package io.vertx.ext.asyncsql.impl.pool;
 
 import com.github.jasync.sql.db.Connection;
 import com.github.jasync.sql.db.ConnectionPoolConfiguration;
+import com.github.jasync.sql.db.QueryResult;
+import com.github.jasync.sql.db.ResultSet;
 import com.github.jasync.sql.db.postgresql.PostgreSQLConnection;
 import com.github.jasync.sql.db.postgresql.column.PostgreSQLColumnDecoderRegistry;
 import com.github.jasync.sql.db.postgresql.column.PostgreSQLColumnEncoderRegistry;
+import io.netty.channel.EventLoop;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.asyncsql.HostRejectedException;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implementation of the {@link AsyncConnectionPool} for PostGresSQL.
@@ -35,12 +41,54 @@ public class PostgresqlAsyncConnectionPool extends AsyncConnectionPool {
     super(vertx, globalConfig, connectionConfig);
   }
 
+  public PostgresqlAsyncConnectionPool(Vertx vertx, JsonObject globalConfig,
+                                        ConnectionPoolConfiguration connectionConfig, String poolName) {
+    super(vertx, globalConfig, connectionConfig, poolName);
+  }
+
   @Override
   protected Connection create() {
     return new PostgreSQLConnection(
-      connectionConfig.getConnectionConfiguration(),
+      connectionConfiguration(),
+      PostgreSQLColumnEncoderRegistry.Companion.getInstance(),
+      PostgreSQLColumnDecoderRegistry.Companion.getInstance());
+  }
+
+  @Override
+  protected Connection create(EventLoop eventLoop) {
+    if (eventLoop == null) {
+      return create();
+    }
+    return new PostgreSQLConnection(
+      connectionConfiguration(eventLoop),
       PostgreSQLColumnEncoderRegistry.Companion.getInstance(),
       PostgreSQLColumnDecoderRegistry.Companion.getInstance());
   }
 
+  /**
+   * With several hosts, only keeps connections to the primary: a standby reports that it is in recovery.
+   */
+  @Override
+  protected CompletableFuture<Connection> verify(Connection connection) {
+    if (!hasFailoverHosts()) {
+      return CompletableFuture.completedFuture(connection);
+    }
+    CompletableFuture<Connection> verified = new CompletableFuture<>();
+    connection.sendQuery("SELECT pg_is_in_recovery()").whenComplete((result, error) -> {
+      if (error == null && !isInRecovery(result)) {
+        verified.complete(connection);
+      } else {
+        connection.disconnect();
+        verified.completeExceptionally(error != null ? error
+          : new HostRejectedException("Connected to a standby server instead of the primary"));
+      }
+    });
+    return verified;
+  }
+
+  private static boolean isInRecovery(QueryResult result) {
+    ResultSet rows = result.getRows();
+    return rows != null && !rows.isEmpty() && Boolean.TRUE.equals(rows.get(0).get(0));
+  }
+
 }
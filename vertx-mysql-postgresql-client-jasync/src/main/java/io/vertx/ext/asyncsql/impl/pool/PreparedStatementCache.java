@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The statements kept prepared on the server by one connection, evicting the least recently used statement beyond
+ * {@code preparedStatementCacheMaxSize}. The statements longer than {@code preparedStatementCacheSqlLimit} are not
+ * kept prepared. It lives as long as its connection, across checkouts. The evicted statements are closed on the server
+ * when the connection is given back to the pool.
+ */
+public class PreparedStatementCache {
+
+  private final int maxSize;
+  private final int sqlLimit;
+  // least recently used first
+  private final LinkedHashSet<String> statements = new LinkedHashSet<>();
+  // the evicted statements that are still prepared on the server
+  private final List<String> evicted = new ArrayList<>();
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong evictions;
+
+  PreparedStatementCache(int maxSize, int sqlLimit, AtomicLong hits, AtomicLong misses, AtomicLong evictions) {
+    this.maxSize = maxSize;
+    this.sqlLimit = sqlLimit;
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+  }
+
+  /**
+   * Records the use of a statement, which may evict the least recently used one.
+   *
+   * @return whether the statement should be kept prepared on the server after use
+   */
+  public synchronized boolean use(String sql) {
+    if (maxSize <= 0 || sql.length() > sqlLimit) {
+      misses.incrementAndGet();
+      return false;
+    }
+    if (statements.remove(sql)) {
+      statements.add(sql);
+      hits.incrementAndGet();
+      return true;
+    }
+    // an evicted statement is still prepared on the server until the connection is given back: it must not be
+    // closed any more
+    if (evicted.remove(sql)) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    statements.add(sql);
+    if (statements.size() > maxSize) {
+      Iterator<String> eldest = statements.iterator();
+      evicted.add(eldest.next());
+      eldest.remove();
+      evictions.incrementAndGet();
+    }
+    return true;
+  }
+
+  /**
+   * @return the evicted statements to close on the server, which are forgotten
+   */
+  public synchronized List<String> drainEvicted() {
+    if (evicted.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<String> drained = new ArrayList<>(evicted);
+    evicted.clear();
+    return drained;
+  }
+}
@@ -31,6 +31,8 @@ import org.junit.experimental.categories.Category;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.PostgreSQLContainer;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 @Category(NeedsDocker.class)
@@ -135,6 +137,12 @@ public class PostgreSQLClientTest extends SQLTestBase {
     });
   }
 
+  @Override
+  protected List<Integer> expectedBatchCounts() {
+    // the statements are sent in a single query, which only reports the count of the last one
+    return Arrays.asList(-2, -2, 1);
+  }
+
   @Override
   protected String createByteArray1TableColumn() {
     return "BYTEA";
@@ -119,6 +119,68 @@ public class PostgreSQLTest extends AbstractTestBase {
     });
   }
 
+  @Test
+  public void testFirstQueryOfTransaction(TestContext context) {
+    Async async = context.async();
+    client.getConnection(ar -> {
+      ensureSuccess(context, ar);
+      conn = ar.result();
+      conn.setAutoCommit(false, ar1 -> {
+        ensureSuccess(context, ar1);
+        // the transaction is started by the same query
+        conn.query("SELECT 42", ar2 -> {
+          ensureSuccess(context, ar2);
+          context.assertEquals(42, ar2.result().getResults().get(0).getInteger(0));
+          conn.query("SELECT now() = statement_timestamp()", ar3 -> {
+            ensureSuccess(context, ar3);
+            context.assertFalse(ar3.result().getResults().get(0).getBoolean(0));
+            conn.rollback(ar4 -> {
+              ensureSuccess(context, ar4);
+              async.complete();
+            });
+          });
+        });
+      });
+    });
+  }
+
+  @Test
+  public void testMalformedFirstQueryOfTransaction(TestContext context) {
+    Async async = context.async();
+    client.getConnection(ar -> {
+      ensureSuccess(context, ar);
+      conn = ar.result();
+      conn.execute("DROP TABLE IF EXISTS test_table", ar1 -> {
+        ensureSuccess(context, ar1);
+        conn.execute("CREATE TABLE test_table (id BIGINT, name VARCHAR(255))", ar2 -> {
+          ensureSuccess(context, ar2);
+          conn.setAutoCommit(false, ar3 -> {
+            ensureSuccess(context, ar3);
+            // the query does not parse, which aborts the transaction it starts
+            conn.query("SELEC 42", ar4 -> {
+              context.assertTrue(ar4.failed());
+              conn.update("INSERT INTO test_table (id, name) VALUES (1, 'Bob')", ar5 -> {
+                context.assertTrue(ar5.failed());
+                context.assertEquals(ar4.cause(), ar5.cause());
+                conn.commit(ar6 -> {
+                  ensureSuccess(context, ar6);
+                  conn.query("SELECT COUNT(*) FROM test_table", ar7 -> {
+                    ensureSuccess(context, ar7);
+                    context.assertEquals(0L, ar7.result().getResults().get(0).getLong(0));
+                    conn.rollback(ar8 -> {
+                      ensureSuccess(context, ar8);
+                      async.complete();
+                    });
+                  });
+                });
+              });
+            });
+          });
+        });
+      });
+    });
+  }
+
   @Test
   public void testUpdatingNumericField(TestContext context) {
     Async async = context.async();
@@ -248,6 +248,39 @@ public abstract class SQLTestBase extends AbstractTestBase {
     });
   }
 
+  @Test
+  public void testRollbackAfterCommit(TestContext context) {
+    Async async = context.async();
+    client.getConnection(ar -> {
+      ensureSuccess(context, ar);
+      conn = ar.result();
+      setupSimpleTable(conn, ar2 -> {
+        ensureSuccess(context, ar2);
+        conn.setAutoCommit(false, ar3 -> {
+          ensureSuccess(context, ar3);
+          conn.update("UPDATE test_table SET name = 'Adele' WHERE id = 0", ar4 -> {
+            ensureSuccess(context, ar4);
+            conn.commit(ar5 -> {
+              ensureSuccess(context, ar5);
+              // the next transaction is started by the next statement
+              conn.update("UPDATE test_table SET name = 'Bob' WHERE id = 0", ar6 -> {
+                ensureSuccess(context, ar6);
+                conn.rollback(ar7 -> {
+                  ensureSuccess(context, ar7);
+                  conn.query("SELECT name FROM test_table WHERE id = 0", ar8 -> {
+                    ensureSuccess(context, ar8);
+                    context.assertEquals("Adele", ar8.result().getResults().get(0).getString(0));
+                    async.complete();
+                  });
+                });
+              });
+            });
+          });
+        });
+      });
+    });
+  }
+
   @Test
   public void testMultipleConnections(TestContext context) {
     int id = 0;
@@ -421,6 +454,67 @@ public abstract class SQLTestBase extends AbstractTestBase {
     });
   }
 
+  @Test
+  public void testBatch(TestContext context) {
+    Async async = context.async();
+
+    client.getConnection(ar -> {
+      ensureSuccess(context, ar);
+      conn = ar.result();
+      setupSimpleTable(conn, ar2 -> {
+        ensureSuccess(context, ar2);
+        conn.batch(Arrays.asList(
+          "INSERT INTO test_table (id, name) VALUES (100, 'Adele')",
+          "UPDATE test_table SET name = 'Bob' WHERE id < 2",
+          "DELETE FROM test_table WHERE id = 100"), ar3 -> {
+          ensureSuccess(context, ar3);
+          context.assertEquals(expectedBatchCounts(), ar3.result());
+          conn.query("SELECT id, name FROM test_table ORDER BY id", ar4 -> {
+            ensureSuccess(context, ar4);
+            List<JsonArray> rows = ar4.result().getResults();
+            context.assertEquals(Data.NAMES.size(), rows.size());
+            context.assertEquals("Bob", rows.get(0).getString(1));
+            context.assertEquals("Bob", rows.get(1).getString(1));
+            async.complete();
+          });
+        });
+      });
+    });
+  }
+
+  /**
+   * @return the counts reported by {@link #testBatch(TestContext)}
+   */
+  protected List<Integer> expectedBatchCounts() {
+    return Arrays.asList(1, 2, 1);
+  }
+
+  @Test
+  public void testBatchWithParams(TestContext context) {
+    Async async = context.async();
+
+    client.getConnection(ar -> {
+      ensureSuccess(context, ar);
+      conn = ar.result();
+      setupSimpleTable(conn, ar2 -> {
+        ensureSuccess(context, ar2);
+        conn.batchWithParams("INSERT INTO test_table (id, name) VALUES (?, ?)", Arrays.asList(
+          new JsonArray().add(100).add("Adele"),
+          new JsonArray().add(101).add("Bob")), ar3 -> {
+          ensureSuccess(context, ar3);
+          context.assertEquals(Arrays.asList(1, 1), ar3.result());
+          conn.batchWithParams("DELETE FROM test_table WHERE id >= ?", Arrays.asList(
+            new JsonArray().add(101),
+            new JsonArray().add(100)), ar4 -> {
+            ensureSuccess(context, ar4);
+            context.assertEquals(Arrays.asList(1, 1), ar4.result());
+            async.complete();
+          });
+        });
+      });
+    });
+  }
+
   @Test
   public void testSelectionOfNullValues(TestContext context) {
     Async async = context.async();
@@ -0,0 +1,227 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import com.github.jasync.sql.db.Connection;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.asyncsql.AsyncSQLClient;
+import io.vertx.ext.asyncsql.Priority;
+import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
+import io.vertx.ext.sql.ResultSet;
+import io.vertx.ext.sql.SQLConnection;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks how the requests are routed to the pools of the client.
+ */
+public class AsyncSQLClientImplTest {
+
+  private Vertx vertx;
+  private final List<Handler<Long>> timers = new ArrayList<>();
+  // the pools of the client by name
+  private final Map<String, AsyncConnectionPool> pools = new HashMap<>();
+  // the pending connection requests of each pool
+  private final Map<AsyncConnectionPool, List<Handler<AsyncResult<Connection>>>> requests = new HashMap<>();
+  private final Map<Connection, SQLConnection> connections = new HashMap<>();
+  private TestClient baseClient;
+  private AsyncSQLClientImpl client;
+
+  @Before
+  public void setUp() {
+    vertx = Mockito.mock(Vertx.class);
+    Mockito.when(vertx.setTimer(Mockito.eq(10L), Mockito.any())).then(invocation -> {
+      timers.add(invocation.getArgument(1));
+      return (long) timers.size();
+    });
+    baseClient = new TestClient(vertx, new JsonObject()
+      .put("partitions", new JsonObject().put("reporting", new JsonObject().put("maxPoolSize", 2)))
+      .put("hedgeReads", true)
+      .put("hedgeMinDelay", 10)
+      .put("replicas", new JsonArray()
+        .add(new JsonObject().put("host", "replica1"))
+        .add(new JsonObject().put("host", "replica2"))));
+    // enough fast reads to hedge after 10 milliseconds
+    for (int i = 0; i < 64; i++) {
+      baseClient.hedgePolicy().record(1);
+    }
+    client = new AsyncSQLClientImpl(baseClient, null);
+  }
+
+  // The second replica is only tried after the delay, the first answer wins, and the other connection is given back.
+  // The latency of the first attempt is recorded even when it loses, and the client statistics count the hedge.
+  @Test
+  public void testHedgedRead() {
+    final List<AsyncResult<ResultSet>> results = new ArrayList<>();
+    client.query("SELECT 1", results::add);
+    final AsyncConnectionPool first = pools.get("test/replica-replica1");
+    final AsyncConnectionPool second = pools.get("test/replica-replica2");
+    assertEquals(1, requests.get(first).size());
+    assertEquals(0, requests.get(second).size());
+
+    timers.get(0).handle(1L);
+    assertEquals(1, requests.get(second).size());
+    assertEquals(1, baseClient.hedgePolicy().getHedges());
+
+    final ResultSet secondResult = new ResultSet();
+    final SQLConnection secondConnection = answer(second, secondResult);
+    assertEquals(1, results.size());
+    assertSame(secondResult, results.get(0).result());
+    Mockito.verify(secondConnection).close(Mockito.any());
+
+    assertEquals(64, baseClient.hedgePolicy().getRecorded());
+
+    final SQLConnection firstConnection = answer(first, new ResultSet());
+    assertEquals(1, results.size());
+    Mockito.verify(firstConnection).close(Mockito.any());
+    Mockito.verify(vertx, Mockito.never()).cancelTimer(Mockito.anyLong());
+    assertEquals(65, baseClient.hedgePolicy().getRecorded());
+
+    final JsonObject hedging = client.getPoolStats().getJsonObject("hedging");
+    assertEquals(10L, (long) hedging.getLong("delay"));
+    assertEquals(1L, (long) hedging.getLong("hedges"));
+    assertEquals(1L, (long) hedging.getLong("wins"));
+  }
+
+  // A read answered before the delay is not hedged
+  @Test
+  public void testFastReadNotHedged() {
+    final List<AsyncResult<ResultSet>> results = new ArrayList<>();
+    client.query("SELECT 1", results::add);
+    final ResultSet result = new ResultSet();
+    answer(pools.get("test/replica-replica1"), result);
+
+    assertEquals(1, results.size());
+    assertSame(result, results.get(0).result());
+    Mockito.verify(vertx).cancelTimer(1L);
+    assertEquals(0, requests.get(pools.get("test/replica-replica2")).size());
+    assertEquals(0, baseClient.hedgePolicy().getHedges());
+    assertEquals(0, baseClient.hedgePolicy().getWins());
+    assertEquals(65, baseClient.hedgePolicy().getRecorded());
+  }
+
+  // The requests of a partition go to its own pool, reads included, and the other requests to the default pool
+  @Test
+  public void testPartitionRouting() {
+    final AsyncSQLClient reporting = client.partition("reporting");
+    final AsyncConnectionPool partitionPool = pools.get("test/reporting");
+    reporting.query("SELECT 1", ar -> {});
+    reporting.update("DELETE FROM test_table", ar -> {});
+    reporting.getConnection(ar -> {});
+    assertEquals(3, requests.get(partitionPool).size());
+    assertEquals(0, requests.get(pools.get("test")).size());
+    assertEquals(0, requests.get(pools.get("test/replica-replica1")).size());
+
+    client.update("DELETE FROM test_table", ar -> {});
+    assertEquals(1, requests.get(pools.get("test")).size());
+    assertEquals(3, requests.get(partitionPool).size());
+  }
+
+  // The reads sent through the primary client go to the default pool, and are never hedged
+  @Test
+  public void testPrimaryRouting() {
+    final AsyncSQLClient primary = client.primary();
+    primary.query("INSERT INTO test_table (name) VALUES ('Bob') RETURNING id", ar -> {});
+    primary.queryWithParams("SELECT nextval(?)", new JsonArray().add("test_seq"), ar -> {});
+    assertEquals(2, requests.get(pools.get("test")).size());
+    assertEquals(0, requests.get(pools.get("test/replica-replica1")).size());
+    assertEquals(0, requests.get(pools.get("test/replica-replica2")).size());
+    assertEquals(0, timers.size());
+
+    primary.close();
+    Mockito.verify(pools.get("test"), Mockito.never()).close(Mockito.any());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownPartition() {
+    client.partition("analytics");
+  }
+
+  /**
+   * Hands a connection to the pending request of the replica, which answers the query with the given result.
+   *
+   * @return the connection handed out
+   */
+  private SQLConnection answer(AsyncConnectionPool replica, ResultSet result) {
+    final Connection connection = Mockito.mock(Connection.class);
+    final SQLConnection conn = Mockito.mock(SQLConnection.class);
+    Mockito.doAnswer(invocation -> {
+      final Handler<AsyncResult<ResultSet>> handler = invocation.getArgument(1);
+      handler.handle(Future.succeededFuture(result));
+      return conn;
+    }).when(conn).query(Mockito.anyString(), Mockito.any());
+    Mockito.doAnswer(invocation -> {
+      final Handler<AsyncResult<Void>> handler = invocation.getArgument(0);
+      handler.handle(Future.succeededFuture());
+      return null;
+    }).when(conn).close(Mockito.any());
+    connections.put(connection, conn);
+    requests.get(replica).remove(0).handle(Future.succeededFuture(connection));
+    return conn;
+  }
+
+  /**
+   * A client whose pools are mocks keeping the connection requests pending.
+   */
+  private class TestClient extends BaseSQLClient {
+
+    private final AsyncConnectionPool pool;
+
+    TestClient(Vertx vertx, JsonObject config) {
+      super(vertx, config);
+      pool = createPool(config, "test");
+      createPartitions("test");
+      createReplicas("test");
+    }
+
+    @Override
+    protected AsyncConnectionPool pool() {
+      return pool;
+    }
+
+    @Override
+    protected AsyncConnectionPool createPool(JsonObject config, String poolName) {
+      final AsyncConnectionPool pool = Mockito.mock(AsyncConnectionPool.class);
+      Mockito.when(pool.getStats()).thenReturn(new JsonObject());
+      final List<Handler<AsyncResult<Connection>>> pending = new ArrayList<>();
+      Mockito.doAnswer(invocation -> pending.add(invocation.getArgument(1)))
+        .when(pool).take(Mockito.any(Priority.class), Mockito.any());
+      pools.put(poolName, pool);
+      requests.put(pool, pending);
+      return pool;
+    }
+
+    @Override
+    protected SQLConnection createFromPool(Connection conn, AsyncConnectionPool pool, Vertx vertx) {
+      return connections.get(conn);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BaseSQLClientTest {
+
+  private final JsonObject config = new JsonObject().put("host", "localhost").put("port", 5432);
+
+  @Test
+  public void testHostAddress() {
+    assertEquals(new JsonObject().put("host", "db1.example.com").put("port", 5432),
+      BaseSQLClient.hostConfig(config, "db1.example.com"));
+    assertEquals(new JsonObject().put("host", "db1.example.com").put("port", 5433),
+      BaseSQLClient.hostConfig(config, "db1.example.com:5433"));
+  }
+
+  @Test
+  public void testIpv6HostAddress() {
+    assertEquals(new JsonObject().put("host", "::1").put("port", 5433), BaseSQLClient.hostConfig(config, "[::1]:5433"));
+    assertEquals(new JsonObject().put("host", "::1").put("port", 5432), BaseSQLClient.hostConfig(config, "[::1]"));
+    assertEquals(new JsonObject().put("host", "fe80::1").put("port", 5432),
+      BaseSQLClient.hostConfig(config, "fe80::1"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidIpv6HostAddress() {
+    BaseSQLClient.hostConfig(config, "[::1:5433");
+  }
+}
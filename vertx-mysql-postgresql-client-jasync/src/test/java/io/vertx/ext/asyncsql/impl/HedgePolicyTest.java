@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HedgePolicyTest {
+
+  @Test
+  public void testNoHedgingBeforeEnoughSamples() {
+    HedgePolicy policy = new HedgePolicy(95, 0);
+    for (int i = 1; i < 64; i++) {
+      policy.record(i);
+    }
+    assertEquals(-1, policy.delay());
+  }
+
+  @Test
+  public void testPercentileDelay() {
+    HedgePolicy policy = new HedgePolicy(95, 0);
+    for (int i = 1; i <= 64; i++) {
+      policy.record(i);
+    }
+    assertEquals(61, policy.delay());
+  }
+
+  @Test
+  public void testMinDelay() {
+    HedgePolicy policy = new HedgePolicy(50, 20);
+    for (int i = 1; i <= 64; i++) {
+      policy.record(1);
+    }
+    assertEquals(20, policy.delay());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPercentile() {
+    new HedgePolicy(0, 5);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import io.vertx.core.json.JsonArray;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class InsertBatchTest {
+
+  @Test
+  public void testRewrite() {
+    InsertBatch insert = InsertBatch.of("INSERT INTO test_table (id, name) VALUES (?, ?)");
+    assertNotNull(insert);
+    assertEquals("INSERT INTO test_table (id, name) VALUES (?, ?),(?, ?),(?, ?)", insert.statement(3));
+    assertEquals(new JsonArray().add(1).add("a").add(2).add("b"),
+      InsertBatch.parameters(Arrays.asList(new JsonArray().add(1).add("a"), new JsonArray().add(2).add("b"))));
+  }
+
+  @Test
+  public void testNotRewritten() {
+    assertNull(InsertBatch.of("UPDATE test_table SET name = ? WHERE id = ?"));
+    assertNull(InsertBatch.of("INSERT INTO test_table (id, name) VALUES (?, now())"));
+    assertNull(InsertBatch.of("INSERT INTO test_table (id) VALUES (?) RETURNING id"));
+    assertNull(InsertBatch.of("INSERT INTO test_table (id) VALUES (?) ON DUPLICATE KEY UPDATE id = id"));
+  }
+
+  @Test
+  public void testSplitByParameters() {
+    InsertBatch insert = InsertBatch.of("insert into test_table values (?, ?)");
+    List<JsonArray> rows = new ArrayList<>();
+    for (int i = 0; i < InsertBatch.MAX_PARAMETERS; i++) {
+      rows.add(new JsonArray().add(i).add(i));
+    }
+    List<List<JsonArray>> chunks = insert.split(rows, Long.MAX_VALUE);
+    assertEquals(3, chunks.size());
+    assertEquals(InsertBatch.MAX_PARAMETERS / 2, chunks.get(0).size());
+    assertEquals(InsertBatch.MAX_PARAMETERS / 2, chunks.get(1).size());
+    assertEquals(1, chunks.get(2).size());
+  }
+
+  @Test
+  public void testSplitBySize() {
+    InsertBatch insert = InsertBatch.of("INSERT INTO test_table (name) VALUES (?)");
+    String name = String.join("", Collections.nCopies(100, "x"));
+    List<JsonArray> rows = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      rows.add(new JsonArray().add(name));
+    }
+    // each row takes a bit more than 300 bytes
+    List<List<JsonArray>> chunks = insert.split(rows, 1000);
+    assertEquals(4, chunks.size());
+    assertEquals(3, chunks.get(0).size());
+    assertEquals(1, chunks.get(3).size());
+  }
+
+  @Test
+  public void testCounts() {
+    assertEquals(Arrays.asList(1, 1, 1), InsertBatch.counts(3, 3));
+    assertEquals(Arrays.asList(InsertBatch.SUCCESS_NO_INFO, InsertBatch.SUCCESS_NO_INFO), InsertBatch.counts(2, 1));
+  }
+}
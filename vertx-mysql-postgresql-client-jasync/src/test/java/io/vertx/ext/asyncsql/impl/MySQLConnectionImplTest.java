@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import com.github.jasync.sql.db.Connection;
+import com.github.jasync.sql.db.ResultSet;
+import com.github.jasync.sql.db.mysql.MySQLQueryResult;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Checks how the statements are sent to the connection.
+ */
+@RunWith(VertxUnitRunner.class)
+public class MySQLConnectionImplTest {
+
+  // The statements rewritten from a batch fit in the default max_allowed_packet of MySQL 5.7
+  @Test
+  public void testBatchFitsInMaxAllowedPacket(TestContext context) {
+    final Async async = context.async();
+    final Connection connection = Mockito.mock(Connection.class);
+    Mockito.when(connection.sendPreparedStatement(Mockito.anyString(), Mockito.anyList()))
+      .then(invocation -> {
+        final List<?> parameters = invocation.getArgument(1);
+        return CompletableFuture.completedFuture(
+          new MySQLQueryResult(parameters.size(), "", 0, 0, 0, Mockito.mock(ResultSet.class)));
+      });
+    final MySQLConnectionImpl conn = new MySQLConnectionImpl(connection, Mockito.mock(AsyncConnectionPool.class),
+      Mockito.mock(Vertx.class));
+    // about 3 MiB per row once encoded
+    final char[] chars = new char[1 << 20];
+    Arrays.fill(chars, 'a');
+    final List<JsonArray> rows = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      rows.add(new JsonArray().add(new String(chars)));
+    }
+
+    conn.batchWithParams("INSERT INTO test_table (name) VALUES (?)", rows, ar -> {
+      context.assertTrue(ar.succeeded());
+      context.assertEquals(Arrays.asList(1, 1, 1), ar.result());
+      Mockito.verify(connection, Mockito.times(3))
+        .sendPreparedStatement(Mockito.eq("INSERT INTO test_table (name) VALUES (?)"), Mockito.anyList());
+      async.complete();
+    });
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import com.github.jasync.sql.db.Connection;
+import com.github.jasync.sql.db.QueryResult;
+import com.github.jasync.sql.db.ResultSet;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
+import io.vertx.ext.asyncsql.impl.pool.PreparedStatementCache;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Checks how the statements are sent to the connection.
+ */
+@RunWith(VertxUnitRunner.class)
+public class PostgreSQLConnectionImplTest {
+
+  private Connection connection;
+  private AsyncConnectionPool pool;
+  private PostgreSQLConnectionImpl conn;
+
+  @Before
+  public void setUp() {
+    connection = Mockito.mock(Connection.class);
+    Mockito.when(connection.sendQuery(Mockito.anyString()))
+      .then(invocation -> CompletableFuture.completedFuture(result(1)));
+    pool = Mockito.mock(AsyncConnectionPool.class);
+    conn = new PostgreSQLConnectionImpl(connection, pool, Mockito.mock(Vertx.class));
+  }
+
+  // The first statement of a transaction starts it in the same round trip, and gets the result of the statement
+  @Test
+  public void testFirstStatementStartsTransaction(TestContext context) {
+    final Async async = context.async();
+    Mockito.when(connection.sendQuery("BEGIN; UPDATE test_table SET name = 'Bob'"))
+      .thenReturn(CompletableFuture.completedFuture(result(3)));
+
+    conn.setAutoCommit(false, ar -> {
+      context.assertTrue(ar.succeeded());
+      conn.update("UPDATE test_table SET name = 'Bob'", ar2 -> {
+        context.assertTrue(ar2.succeeded());
+        context.assertEquals(3, ar2.result().getUpdated());
+        conn.update("UPDATE test_table SET name = 'Adele'", ar3 -> {
+          context.assertTrue(ar3.succeeded());
+          Mockito.verify(connection).sendQuery("BEGIN; UPDATE test_table SET name = 'Bob'");
+          Mockito.verify(connection).sendQuery("UPDATE test_table SET name = 'Adele'");
+          Mockito.verify(connection, Mockito.never()).sendQuery("BEGIN");
+          async.complete();
+        });
+      });
+    });
+  }
+
+  // A failed first statement aborts the transaction: the next statements fail with the same error until it ends
+  @Test
+  public void testFailedFirstStatement(TestContext context) {
+    final Async async = context.async();
+    final RuntimeException syntaxError = new RuntimeException("syntax error at or near \"SELEC\"");
+    final CompletableFuture<QueryResult> failed = new CompletableFuture<>();
+    failed.completeExceptionally(syntaxError);
+    Mockito.when(connection.sendQuery("BEGIN; SELEC 1")).thenReturn(failed);
+
+    conn.setAutoCommit(false, ar -> {
+      context.assertTrue(ar.succeeded());
+      conn.query("SELEC 1", ar2 -> {
+        context.assertTrue(ar2.failed());
+        context.assertEquals(syntaxError, ar2.cause());
+        conn.update("INSERT INTO test_table (id, name) VALUES (1, 'Bob')", ar3 -> {
+          context.assertTrue(ar3.failed());
+          context.assertEquals(syntaxError, ar3.cause());
+          conn.updateWithParams("INSERT INTO test_table (id, name) VALUES (?, ?)", new JsonArray().add(2).add("Adele"),
+            ar4 -> {
+              context.assertTrue(ar4.failed());
+              context.assertEquals(syntaxError, ar4.cause());
+              conn.batch(Collections.singletonList("DELETE FROM test_table"), ar5 -> {
+                context.assertTrue(ar5.failed());
+                context.assertEquals(syntaxError, ar5.cause());
+                Mockito.verify(connection, Mockito.never())
+                  .sendQuery("INSERT INTO test_table (id, name) VALUES (1, 'Bob')");
+                Mockito.verify(connection, Mockito.never())
+                  .sendPreparedStatement(Mockito.anyString(), Mockito.anyList());
+                Mockito.verify(connection, Mockito.never()).sendQuery("DELETE FROM test_table");
+                Mockito.verify(connection, Mockito.never()).sendQuery("ROLLBACK");
+                conn.rollback(ar6 -> {
+                  context.assertTrue(ar6.succeeded());
+                  Mockito.verify(connection).sendQuery("ROLLBACK");
+                  conn.update("INSERT INTO test_table (id, name) VALUES (1, 'Bob')", ar7 -> {
+                    context.assertTrue(ar7.succeeded());
+                    Mockito.verify(connection).sendQuery("BEGIN; INSERT INTO test_table (id, name) VALUES (1, 'Bob')");
+                    async.complete();
+                  });
+                });
+              });
+            });
+        });
+      });
+    });
+  }
+
+  // Committing an aborted transaction ends it like a rollback, and the next statement starts a new transaction
+  @Test
+  public void testCommitAfterFailedFirstStatement(TestContext context) {
+    final Async async = context.async();
+    final CompletableFuture<QueryResult> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new RuntimeException("relation \"missing_table\" does not exist"));
+    Mockito.when(connection.sendQuery("BEGIN; DELETE FROM missing_table")).thenReturn(failed);
+
+    conn.setAutoCommit(false, ar -> {
+      context.assertTrue(ar.succeeded());
+      conn.update("DELETE FROM missing_table", ar2 -> {
+        context.assertTrue(ar2.failed());
+        conn.update("INSERT INTO test_table (id, name) VALUES (1, 'Bob')", ar3 -> {
+          context.assertTrue(ar3.failed());
+          conn.commit(ar4 -> {
+            context.assertTrue(ar4.succeeded());
+            Mockito.verify(connection).sendQuery("COMMIT");
+            Mockito.verify(connection, Mockito.never())
+              .sendQuery("INSERT INTO test_table (id, name) VALUES (1, 'Bob')");
+            conn.update("INSERT INTO test_table (id, name) VALUES (1, 'Bob')", ar5 -> {
+              context.assertTrue(ar5.succeeded());
+              Mockito.verify(connection).sendQuery("BEGIN; INSERT INTO test_table (id, name) VALUES (1, 'Bob')");
+              async.complete();
+            });
+          });
+        });
+      });
+    });
+  }
+
+  // A batch is sent as a single query, starting the transaction, and only the count of its last statement is known
+  @Test
+  public void testBatchInOneQuery(TestContext context) {
+    final Async async = context.async();
+    Mockito.when(connection.sendQuery("BEGIN; INSERT INTO test_table (id, name) VALUES (1, 'Bob')\n;\n" +
+      "UPDATE test_table SET name = 'Adele'")).thenReturn(CompletableFuture.completedFuture(result(3)));
+
+    conn.setAutoCommit(false, ar -> {
+      context.assertTrue(ar.succeeded());
+      conn.batch(Arrays.asList("INSERT INTO test_table (id, name) VALUES (1, 'Bob')",
+        "UPDATE test_table SET name = 'Adele'"), ar2 -> {
+        context.assertTrue(ar2.succeeded());
+        context.assertEquals(Arrays.asList(-2, 3), ar2.result());
+        Mockito.verify(connection).sendQuery(Mockito.anyString());
+        async.complete();
+      });
+    });
+  }
+
+  // The statements evicted from the cache are closed once the connection is given back, not before the next statement
+  @Test
+  public void testEvictedStatementsClosedOnGiveBack(TestContext context) {
+    final Async async = context.async();
+    final PreparedStatementCache cache = Mockito.mock(PreparedStatementCache.class);
+    Mockito.when(cache.use(Mockito.anyString())).thenReturn(true);
+    Mockito.when(cache.drainEvicted()).thenReturn(Collections.singletonList("SELECT 1"));
+    Mockito.when(pool.getPreparedStatementCache(connection)).thenReturn(cache);
+    Mockito.when(connection.sendPreparedStatement(Mockito.anyString(), Mockito.anyList(), Mockito.anyBoolean()))
+      .then(invocation -> CompletableFuture.completedFuture(result(1)));
+    Mockito.when(connection.releasePreparedStatement("SELECT 1")).thenReturn(CompletableFuture.completedFuture(true));
+    conn = new PostgreSQLConnectionImpl(connection, pool, Mockito.mock(Vertx.class));
+
+    conn.updateWithParams("UPDATE test_table SET name = ?", new JsonArray().add("Bob"), ar -> {
+      context.assertTrue(ar.succeeded());
+      Mockito.verify(connection).sendPreparedStatement(Mockito.eq("UPDATE test_table SET name = ?"), Mockito.anyList(),
+        Mockito.eq(false));
+      Mockito.verify(connection, Mockito.never()).releasePreparedStatement(Mockito.anyString());
+      conn.close(ar2 -> {
+        InOrder inOrder = Mockito.inOrder(connection, pool);
+        inOrder.verify(connection).releasePreparedStatement("SELECT 1");
+        inOrder.verify(pool, Mockito.timeout(1000)).giveBack(connection);
+        async.complete();
+      });
+    });
+  }
+
+  private static QueryResult result(long rowsAffected) {
+    return new QueryResult(rowsAffected, "", Mockito.mock(ResultSet.class));
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl;
+
+import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicaSetTest {
+
+  @Test
+  public void testNoReplica() {
+    assertNull(new ReplicaSet("ROUND_ROBIN", 1000).select());
+  }
+
+  @Test
+  public void testRoundRobin() {
+    ReplicaSet replicas = new ReplicaSet("round_robin", 1000);
+    AsyncConnectionPool first = Mockito.mock(AsyncConnectionPool.class);
+    AsyncConnectionPool second = Mockito.mock(AsyncConnectionPool.class);
+    replicas.add(first);
+    replicas.add(second);
+    assertEquals(first, replicas.select());
+    assertEquals(second, replicas.select());
+    assertEquals(first, replicas.select());
+  }
+
+  @Test
+  public void testLeastConnections() {
+    ReplicaSet replicas = new ReplicaSet("LEAST_CONNECTIONS", 1000);
+    AsyncConnectionPool busy = Mockito.mock(AsyncConnectionPool.class);
+    AsyncConnectionPool idle = Mockito.mock(AsyncConnectionPool.class);
+    Mockito.when(busy.getInUseCount()).thenReturn(3);
+    Mockito.when(idle.getInUseCount()).thenReturn(1);
+    Mockito.when(idle.getWaitersCount()).thenReturn(1);
+    replicas.add(busy);
+    replicas.add(idle);
+    assertEquals(idle, replicas.select());
+    assertEquals(idle, replicas.select());
+  }
+
+  @Test
+  public void testLatency() {
+    ReplicaSet replicas = new ReplicaSet("LATENCY", 1000);
+    AsyncConnectionPool slow = Mockito.mock(AsyncConnectionPool.class);
+    AsyncConnectionPool fast = Mockito.mock(AsyncConnectionPool.class);
+    Mockito.when(slow.getLatencyAverage()).thenReturn(100.0);
+    Mockito.when(fast.getLatencyAverage()).thenReturn(10.0);
+    replicas.add(slow);
+    replicas.add(fast);
+    assertEquals(fast, replicas.select());
+    // the fast replica is still preferred with a request in flight, but not with many
+    Mockito.when(fast.getInUseCount()).thenReturn(1);
+    assertEquals(fast, replicas.select());
+    Mockito.when(fast.getWaitersCount()).thenReturn(10);
+    assertEquals(slow, replicas.select());
+  }
+
+  @Test
+  public void testEjection() {
+    long[] now = {0};
+    ReplicaSet replicas = new ReplicaSet("ROUND_ROBIN", 30_000) {
+      @Override
+      long now() {
+        return now[0];
+      }
+    };
+    AsyncConnectionPool failing = Mockito.mock(AsyncConnectionPool.class);
+    AsyncConnectionPool healthy = Mockito.mock(AsyncConnectionPool.class);
+    Mockito.when(failing.getFailureCount()).thenReturn(10L);
+    Mockito.when(healthy.getUsageCount()).thenReturn(10L);
+    replicas.add(failing);
+    replicas.add(healthy);
+    assertEquals(healthy, replicas.select());
+    assertEquals(healthy, replicas.select());
+    // back in the balancing after the ejection time, with no new failure
+    now[0] = 30_000;
+    assertEquals(failing, replicas.select());
+    assertEquals(healthy, replicas.select());
+  }
+
+  @Test
+  public void testSlowReplicaReadmitted() {
+    long[] now = {0};
+    ReplicaSet replicas = new ReplicaSet("ROUND_ROBIN", 30_000) {
+      @Override
+      long now() {
+        return now[0];
+      }
+    };
+    double[] latency = {100.0};
+    long[] usages = {10L};
+    AsyncConnectionPool slow = Mockito.mock(AsyncConnectionPool.class);
+    Mockito.when(slow.getLatencyAverage()).then(invocation -> latency[0]);
+    Mockito.when(slow.getUsageCount()).then(invocation -> usages[0]);
+    Mockito.doAnswer(invocation -> latency[0] = 0).when(slow).resetLatency();
+    AsyncConnectionPool first = fastReplica();
+    AsyncConnectionPool second = fastReplica();
+    replicas.add(slow);
+    replicas.add(first);
+    replicas.add(second);
+    assertFalse(select(replicas, 3).contains(slow));
+    // back in the balancing with its latency forgotten, and not ejected again before new requests
+    now[0] = 30_000;
+    assertTrue(select(replicas, 3).contains(slow));
+    Mockito.verify(slow).resetLatency();
+    now[0] = 31_000;
+    latency[0] = 100.0;
+    usages[0] = 12L;
+    assertTrue(select(replicas, 3).contains(slow));
+    // judged again once it served enough requests
+    now[0] = 32_000;
+    usages[0] = 15L;
+    assertFalse(select(replicas, 3).contains(slow));
+  }
+
+  private static Set<AsyncConnectionPool> select(ReplicaSet replicas, int times) {
+    Set<AsyncConnectionPool> selected = new HashSet<>();
+    for (int i = 0; i < times; i++) {
+      selected.add(replicas.select());
+    }
+    return selected;
+  }
+
+  private static AsyncConnectionPool fastReplica() {
+    AsyncConnectionPool pool = Mockito.mock(AsyncConnectionPool.class);
+    Mockito.when(pool.getLatencyAverage()).thenReturn(10.0);
+    Mockito.when(pool.getUsageCount()).thenReturn(10L);
+    return pool;
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownLoadBalancing() {
+    new ReplicaSet("RANDOM", 1000);
+  }
+}
@@ -15,7 +15,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -32,11 +32,13 @@ public class AsyncConnectionPoolReleaseTest {
   private Vertx vertx;
   /** Timers in first in first out order */
   private Map<Long, Handler<Long>> timers = new LinkedHashMap<>();
+  /** The clock of the idle connection sweep */
+  private long now;
 
   @Before
   public void setUp() {
     this.vertx = Mockito.mock(Vertx.class);
-    Mockito.when(vertx.setTimer(Mockito.anyLong(), Mockito.any())).then(invocation -> {
+    Mockito.when(vertx.setPeriodic(Mockito.anyLong(), Mockito.any())).then(invocation -> {
       long timerId = ThreadLocalRandom.current().nextLong();
       Handler<Long> handler = invocation.getArgument(1);
       timers.put(timerId, handler);
@@ -50,72 +52,140 @@ public class AsyncConnectionPoolReleaseTest {
   }
 
   @After
-  public void allTimersWereExcuted(TestContext context) {
+  public void allTimersWereCancelled(TestContext context) {
     context.assertEquals(0, timers.size());
   }
 
-  private void executeNextTimer() {
-    Iterator<Entry<Long, Handler<Long>>> iterator = timers.entrySet().iterator();
-    Entry<Long, Handler<Long>> entry = iterator.next();
-    iterator.remove();
-    Long timerId = entry.getKey();
-    Handler<Long> handler = entry.getValue();
-    handler.handle(timerId);
+  private void sweep(long elapsed) {
+    now += elapsed;
+    for (Entry<Long, Handler<Long>> entry : new ArrayList<>(timers.entrySet())) {
+      entry.getValue().handle(entry.getKey());
+    }
   }
 
   @Test
   public void releaseOneConnection(TestContext context) throws Exception {
-    final AsyncConnectionPool pool = Mockito.spy(new AsyncConnectionPoolMock());
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock();
+    context.assertEquals(1, timers.size());
     pool.take(context.asyncAssertSuccess(connection -> {
-      context.assertEquals(0, pool.getTimersSize());
       pool.giveBack(connection);
-      context.assertEquals(1, pool.getTimersSize());
-      executeNextTimer();
-      context.assertEquals(0, pool.getTimersSize());
+      context.assertEquals(1, pool.getIdleCount());
+      sweep(5);
+      context.assertEquals(1, pool.getIdleCount());
+      sweep(5);
+      context.assertEquals(0, pool.getIdleCount());
+      context.assertEquals(0, pool.getPoolSize());
+      Mockito.verify(connection).disconnect();
+      pool.close();
     }));
   }
 
   @Test
   public void releaseThreeConnections(TestContext context) throws Exception {
-    final AsyncConnectionPool pool = Mockito.spy(new AsyncConnectionPoolMock());
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock();
     pool.take(context.asyncAssertSuccess(connection1 -> {
       pool.take(context.asyncAssertSuccess(connection2 -> {
         pool.take(context.asyncAssertSuccess(connection3 -> {
-          context.assertEquals(0, pool.getTimersSize());
           pool.giveBack(connection2);
+          sweep(5);
           pool.giveBack(connection3);
           pool.giveBack(connection1);
-          context.assertEquals(3, pool.getTimersSize());
-          executeNextTimer();
-          executeNextTimer();
-          executeNextTimer();
-          context.assertEquals(0, pool.getTimersSize());
+          context.assertEquals(3, pool.getIdleCount());
+          sweep(5);
+          // only the connection idle for the whole release delay is released
+          context.assertEquals(2, pool.getIdleCount());
+          sweep(5);
+          context.assertEquals(0, pool.getIdleCount());
+          context.assertEquals(0, pool.getPoolSize());
+          pool.close();
         }));
       }));
     }));
   }
 
   @Test
-  public void cancelReleaseTimer(TestContext context) throws Exception {
-    final AsyncConnectionPool pool = Mockito.spy(new AsyncConnectionPoolMock());
+  public void keepTakenConnection(TestContext context) throws Exception {
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock();
     pool.take(context.asyncAssertSuccess(connection -> {
-      context.assertEquals(0, pool.getTimersSize());
       pool.giveBack(connection);
-      context.assertEquals(1, pool.getTimersSize());
+      sweep(5);
       pool.take(context.asyncAssertSuccess(connection2 -> {
         context.assertEquals(connection, connection2);
-        context.assertEquals(0, pool.getTimersSize());
+        sweep(10);
+        context.assertEquals(1, pool.getPoolSize());
         pool.giveBack(connection);
-        context.assertEquals(1, pool.getTimersSize());
-        executeNextTimer();
-        context.assertEquals(0, pool.getTimersSize());
+        sweep(5);
+        // idle again for less than the release delay
+        context.assertEquals(1, pool.getIdleCount());
+        sweep(5);
+        context.assertEquals(0, pool.getPoolSize());
+        pool.close();
+      }));
+    }));
+  }
+
+  @Test
+  public void keepMinPoolSize(TestContext context) throws Exception {
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock(globalConfiguration.copy().put("minPoolSize", 1));
+    pool.take(context.asyncAssertSuccess(connection1 -> {
+      pool.take(context.asyncAssertSuccess(connection2 -> {
+        pool.giveBack(connection1);
+        pool.giveBack(connection2);
+        sweep(10);
+        // one connection was released, the other one is kept
+        context.assertEquals(1, pool.getPoolSize());
+        context.assertEquals(1, pool.getIdleCount());
+        sweep(10);
+        context.assertEquals(1, pool.getPoolSize());
+        pool.close();
+      }));
+    }));
+  }
+
+  @Test
+  public void noSweepWithoutReleaseDelay(TestContext context) throws Exception {
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock(new JsonObject().put("maxPoolSize", MAX_POOL_SIZE));
+    context.assertEquals(0, timers.size());
+    pool.close();
+  }
+
+  @Test
+  public void reportLeakedConnection(TestContext context) throws Exception {
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock(new JsonObject()
+      .put("maxPoolSize", MAX_POOL_SIZE)
+      .put("leakDetectionThreshold", 10)
+      .put("leakDetectionSampleRate", 1.0));
+    context.assertEquals(1, timers.size());
+    pool.take(context.asyncAssertSuccess(connection -> {
+      sweep(5);
+      context.assertEquals(0L, pool.getLeakedCount());
+      sweep(5);
+      context.assertEquals(1L, pool.getLeakedCount());
+      // a leaked connection is only reported once
+      sweep(10);
+      context.assertEquals(1L, pool.getLeakedCount());
+      pool.giveBack(connection);
+      pool.take(context.asyncAssertSuccess(connection2 -> {
+        pool.giveBack(connection2);
+        sweep(20);
+        context.assertEquals(1L, pool.getLeakedCount());
+        pool.close();
       }));
     }));
   }
 
   private class AsyncConnectionPoolMock extends AsyncConnectionPool {
     AsyncConnectionPoolMock() {
-      super(AsyncConnectionPoolReleaseTest.this.vertx, globalConfiguration, null);
+      this(globalConfiguration);
+    }
+
+    AsyncConnectionPoolMock(JsonObject config) {
+      super(AsyncConnectionPoolReleaseTest.this.vertx, config, null);
+    }
+
+    @Override
+    long now() {
+      return now;
     }
 
     @Override
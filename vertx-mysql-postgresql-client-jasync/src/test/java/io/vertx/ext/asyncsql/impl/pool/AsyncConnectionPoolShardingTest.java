@@ -0,0 +1,229 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl.pool;
+
+import com.github.jasync.sql.db.Configuration;
+import com.github.jasync.sql.db.Connection;
+import com.github.jasync.sql.db.SSLConfiguration;
+import com.github.jasync.sql.db.interceptor.QueryInterceptor;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@RunWith(VertxUnitRunner.class)
+public class AsyncConnectionPoolShardingTest {
+
+  private static final JsonObject globalConfiguration = new JsonObject()
+    .put("maxPoolSize", 1)
+    .put("eventLoopSharding", true);
+
+  private static final JsonObject affinityConfiguration = new JsonObject()
+    .put("maxPoolSize", 2)
+    .put("eventLoopAffinity", true);
+
+  private Vertx vertx;
+  private Context first;
+  private Context second;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    // each context created outside of Vert.x is bound to the next event loop
+    first = vertx.getOrCreateContext();
+    second = vertx.getOrCreateContext();
+  }
+
+  @After
+  public void tearDown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testBorrowFromOtherShard(TestContext context) {
+    final Async async = context.async();
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock();
+
+    first.runOnContext(v -> pool.take(context.asyncAssertSuccess(connection -> {
+      pool.giveBack(connection);
+      second.runOnContext(v2 -> pool.take(context.asyncAssertSuccess(borrowed -> {
+        context.assertEquals(connection, borrowed);
+        context.assertEquals(1, pool.createdConnections.get());
+        context.assertEquals(2, pool.getShardsCount());
+        async.complete();
+      })));
+    })));
+  }
+
+  @Test
+  public void testWaiterServedByOtherShard(TestContext context) {
+    final Async async = context.async();
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock();
+
+    first.runOnContext(v -> pool.take(context.asyncAssertSuccess(connection -> {
+      second.runOnContext(v2 -> {
+        pool.take(context.asyncAssertSuccess(other -> {
+          context.assertEquals(connection, other);
+          context.assertEquals(1, pool.createdConnections.get());
+          async.complete();
+        }));
+        first.runOnContext(v3 -> pool.giveBack(connection));
+      });
+    })));
+  }
+
+  // Each connection is driven by the event loop of the request it was opened for
+  @Test
+  public void testConnectionCreatedOnCallerEventLoop(TestContext context) {
+    final Async async = context.async();
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(affinityConfiguration);
+
+    first.runOnContext(v -> pool.take(context.asyncAssertSuccess(connection -> {
+      second.runOnContext(v2 -> pool.take(context.asyncAssertSuccess(other -> {
+        context.assertNotEquals(connection, other);
+        context.assertEquals(Arrays.asList(eventLoop(first), eventLoop(second)), pool.eventLoops);
+        async.complete();
+      })));
+    })));
+  }
+
+  // A connection borrowed by another event loop goes back to the shard of its own event loop
+  @Test
+  public void testAffinity(TestContext context) {
+    final Async async = context.async();
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(affinityConfiguration);
+
+    first.runOnContext(v -> pool.take(context.asyncAssertSuccess(connection -> {
+      pool.giveBack(connection);
+      second.runOnContext(v2 -> pool.take(context.asyncAssertSuccess(borrowed -> {
+        context.assertEquals(connection, borrowed);
+        context.assertEquals(1L, pool.getAffinityMisses());
+        pool.giveBack(borrowed);
+        first.runOnContext(v3 -> pool.take(context.asyncAssertSuccess(reused -> {
+          context.assertEquals(connection, reused);
+          context.assertEquals(2L, pool.getAffinityHits());
+          context.assertEquals(1, pool.createdConnections.get());
+          async.complete();
+        })));
+      })));
+    })));
+  }
+
+  // The configuration of a connection opened for an event loop keeps every field of the host configuration
+  @Test
+  public void testConnectionConfigurationOnEventLoop(TestContext context) throws Exception {
+    final Configuration configuration = new Configuration(
+      "vertx",
+      "db.example.com",
+      6543,
+      "password",
+      "inventory",
+      new SSLConfiguration(SSLConfiguration.Mode.Require, new File("root.crt")),
+      StandardCharsets.ISO_8859_1,
+      1024,
+      new UnpooledByteBufAllocator(false),
+      1234,
+      Duration.ofSeconds(7),
+      "inventory-service",
+      Collections.<Supplier<QueryInterceptor>>singletonList(() -> null),
+      Mockito.mock(EventLoopGroup.class),
+      command -> {});
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock() {
+      @Override
+      protected Configuration connectionConfiguration() {
+        return configuration;
+      }
+    };
+    final EventLoop eventLoop = eventLoop(first);
+
+    final Configuration copy = pool.connectionConfiguration(eventLoop);
+
+    // the componentN() methods of the data class return its fields in the order of its constructor
+    final List<Method> components = new ArrayList<>();
+    for (Method method : Configuration.class.getMethods()) {
+      if (method.getName().matches("component\\d+")) {
+        components.add(method);
+      }
+    }
+    components.sort(Comparator.comparingInt(method -> Integer.parseInt(method.getName().substring(9))));
+    context.assertEquals(15, components.size(), "the fields of Configuration changed: update connectionConfiguration");
+    for (Method component : components.subList(0, 13)) {
+      context.assertEquals(component.invoke(configuration), component.invoke(copy), component.getName());
+    }
+    context.assertEquals(eventLoop, copy.getEventLoopGroup());
+    context.assertEquals(eventLoop, copy.getExecutionContext());
+  }
+
+  private static EventLoop eventLoop(Context context) {
+    return ((ContextInternal) context).nettyEventLoop();
+  }
+
+  private class AsyncConnectionPoolMock extends AsyncConnectionPool {
+
+    final AtomicInteger createdConnections = new AtomicInteger();
+    // the event loops the connections were opened for
+    final List<EventLoop> eventLoops = new CopyOnWriteArrayList<>();
+
+    AsyncConnectionPoolMock() {
+      this(globalConfiguration);
+    }
+
+    AsyncConnectionPoolMock(JsonObject config) {
+      super(AsyncConnectionPoolShardingTest.this.vertx, config, null);
+    }
+
+    @Override
+    protected Connection create(EventLoop eventLoop) {
+      eventLoops.add(eventLoop);
+      return create();
+    }
+
+    @Override
+    protected Connection create() {
+      createdConnections.incrementAndGet();
+      final Connection connection = Mockito.mock(Connection.class);
+      Mockito.when(connection.connect()).then(answer -> CompletableFuture.completedFuture(connection));
+      Mockito.when(connection.isConnected()).thenReturn(true);
+      return connection;
+    }
+  }
+}
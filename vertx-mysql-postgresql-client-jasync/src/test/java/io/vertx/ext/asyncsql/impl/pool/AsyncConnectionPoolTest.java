@@ -17,10 +17,27 @@
 package io.vertx.ext.asyncsql.impl.pool;
 
 import com.github.jasync.sql.db.Connection;
+import com.github.jasync.sql.db.ConnectionPoolConfiguration;
+import com.github.jasync.sql.db.ConnectionPoolConfigurationBuilder;
+import com.github.jasync.sql.db.QueryResult;
+import com.github.jasync.sql.db.ResultSet;
+import io.netty.channel.EventLoopGroup;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.spi.metrics.PoolMetrics;
+import io.vertx.core.spi.metrics.VertxMetrics;
+import io.vertx.ext.asyncsql.AcquireTimeoutException;
+import io.vertx.ext.asyncsql.CircuitBreakerOpenException;
+import io.vertx.ext.asyncsql.HostRejectedException;
+import io.vertx.ext.asyncsql.PoolClosedException;
+import io.vertx.ext.asyncsql.PoolExhaustedException;
+import io.vertx.ext.asyncsql.Priority;
 import io.vertx.ext.asyncsql.impl.pool.AsyncConnectionPool;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -28,16 +45,23 @@ import io.vertx.ext.unit.junit.VertxUnitRunner;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -181,6 +205,700 @@ public class AsyncConnectionPoolTest {
     });
   }
 
+  // With a maxConnectionRetryDelay, the delays before the retries are random, under a doubling bound
+  @Test
+  public void testRetriesWithBackoff(TestContext context) {
+    final int MAX_RETRIES = 4;
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject()
+        .put("maxConnectionRetries", MAX_RETRIES)
+        .put("connectionRetryDelay", 100L)
+        .put("maxConnectionRetryDelay", 300L),
+      this::getFailingConnection);
+
+    pool.take(result -> context.assertTrue(result.failed()));
+    context.assertEquals(MAX_RETRIES + 1, pool.connectionAttempts);
+    final ArgumentCaptor<Long> delays = ArgumentCaptor.forClass(Long.class);
+    Mockito.verify(vertx, Mockito.times(MAX_RETRIES)).setTimer(delays.capture(), Mockito.any());
+    final long[] bounds = {100, 200, 300, 300};
+    for (int i = 0; i < MAX_RETRIES; i++) {
+      final long delay = delays.getAllValues().get(i);
+      context.assertTrue(delay >= 1 && delay <= bounds[i], "delay " + delay + " of retry " + (i + 1));
+    }
+  }
+
+  // The circuit breaker opens after circuitBreakerThreshold failures, and closes after a successful probe
+  @Test
+  public void testCircuitBreaker(TestContext context) {
+    completeOnCallingThread();
+    final List<Handler<Long>> timers = stubTimers();
+    final AtomicBoolean failing = new AtomicBoolean(true);
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("circuitBreakerThreshold", 2).put("circuitBreakerResetTimeout", 1000L),
+      () -> failing.get() ? getFailingConnection() : getGoodConnection());
+
+    pool.take(result -> context.assertFalse(result.cause() instanceof CircuitBreakerOpenException));
+    context.assertEquals(0, timers.size());
+    pool.take(result -> context.assertFalse(result.cause() instanceof CircuitBreakerOpenException));
+    context.assertEquals(1, timers.size());
+    // open: requests fail right away
+    pool.take(result -> context.assertTrue(result.cause() instanceof CircuitBreakerOpenException));
+    context.assertEquals(2, pool.connectionAttempts);
+    // a failed probe opens the breaker again
+    timers.get(0).handle(1L);
+    context.assertEquals(3, pool.connectionAttempts);
+    context.assertEquals(2, timers.size());
+    pool.take(result -> context.assertTrue(result.cause() instanceof CircuitBreakerOpenException));
+    // a successful probe closes it, and its connection serves the next request
+    failing.set(false);
+    timers.get(1).handle(2L);
+    context.assertEquals(4, pool.connectionAttempts);
+    context.assertEquals(1, pool.getIdleCount());
+    pool.take(result -> context.assertTrue(result.succeeded()));
+    context.assertEquals(4, pool.connectionAttempts);
+  }
+
+  // A connection rejected by the verification reached the database, so it does not open the circuit breaker
+  @Test
+  public void testVerifyRejectionKeepsCircuitBreakerClosed(TestContext context) {
+    completeOnCallingThread();
+    final List<Handler<Long>> timers = stubTimers();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("circuitBreakerThreshold", 1),
+      this::getGoodConnection);
+    pool.verifier = connection -> {
+      final CompletableFuture<Connection> rejected = new CompletableFuture<>();
+      rejected.completeExceptionally(new RuntimeException("standby"));
+      return rejected;
+    };
+    pool.setHosts(Arrays.<ConnectionPoolConfiguration>asList(null, null));
+
+    pool.take(result -> context.assertTrue(result.failed()));
+    context.assertEquals(1, pool.getCurrentHost());
+    pool.take(result -> context.assertFalse(result.cause() instanceof CircuitBreakerOpenException));
+    context.assertEquals(2, pool.connectionAttempts);
+    context.assertEquals(0, timers.size());
+  }
+
+  // With a wait queue of 1, the third request is rejected right away
+  @Test
+  public void testMaxWaitQueueSize(TestContext context) {
+    final Async async = context.async();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject()
+        .put("maxPoolSize", 1)
+        .put("maxWaitQueueSize", 1),
+      this::getGoodConnection);
+
+    pool.take(result1 -> {
+      context.assertTrue(result1.succeeded());
+      pool.take(result2 -> {
+        context.assertTrue(result2.succeeded());
+        context.assertEquals(1, pool.createdConnections);
+        async.complete();
+      });
+      pool.take(result3 -> {
+        context.assertTrue(result3.failed());
+        context.assertTrue(result3.cause() instanceof PoolExhaustedException);
+      });
+      pool.giveBack(result1.result());
+    });
+  }
+
+  // The mocked timer fires right away, so a queued request times out as soon as it is queued
+  @Test
+  public void testConnectionAcquireTimeout(TestContext context) {
+    final Async async = context.async();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject()
+        .put("maxPoolSize", 1)
+        .put("connectionAcquireTimeout", 100L),
+      this::getGoodConnection);
+
+    pool.take(result1 -> {
+      context.assertTrue(result1.succeeded());
+      pool.take(result2 -> {
+        context.assertTrue(result2.failed());
+        context.assertTrue(result2.cause() instanceof AcquireTimeoutException);
+        async.complete();
+      });
+    });
+  }
+
+  // Only one connection is opened at a time, the other requests wait for the connection attempt to complete
+  @Test
+  public void testMaxConcurrentConnects(TestContext context) {
+    final Async async = context.async(3);
+    final List<Runnable> connects = new CopyOnWriteArrayList<>();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject()
+        .put("maxPoolSize", 3)
+        .put("maxConcurrentConnects", 1),
+      () -> {
+        final Connection connection = Mockito.mock(Connection.class);
+        final CompletableFuture<Connection> connect = new CompletableFuture<>();
+        Mockito.when(connection.connect()).then(answer -> connect);
+        Mockito.when(connection.isConnected()).thenReturn(true);
+        connects.add(() -> connect.complete(connection));
+        return connection;
+      });
+
+    for (int i = 0; i < 3; i++) {
+      pool.take(result -> {
+        context.assertTrue(result.succeeded());
+        async.countDown();
+        // complete the connection attempt started when the previous one completed
+        connects.get(connects.size() - 1).run();
+      });
+    }
+    context.assertEquals(1, pool.connectionAttempts);
+    connects.get(0).run();
+  }
+
+  // Warming up opens minPoolSize connections in the background, and a warm-up connection attempt that fails does not
+  // fail the request waiting for a connection meanwhile
+  @Test
+  public void testWarmUp(TestContext context) {
+    completeOnCallingThread();
+    final List<Connection> connections = new ArrayList<>();
+    final List<CompletableFuture<Connection>> connects = new ArrayList<>();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject()
+        .put("maxPoolSize", 2)
+        .put("minPoolSize", 2),
+      () -> {
+        final Connection connection = Mockito.mock(Connection.class);
+        final CompletableFuture<Connection> connect = new CompletableFuture<>();
+        Mockito.when(connection.connect()).then(answer -> connect);
+        Mockito.when(connection.isConnected()).thenReturn(true);
+        connections.add(connection);
+        connects.add(connect);
+        return connection;
+      });
+
+    pool.warmUp();
+    context.assertEquals(2, pool.connectionAttempts);
+    context.assertEquals(2, pool.getCreatingCount());
+
+    final List<AsyncResult<Connection>> results = new ArrayList<>();
+    pool.take(results::add);
+    context.assertEquals(1, pool.getWaitersCount());
+
+    // the failed warm-up connection frees its slot for the waiting request
+    connects.get(0).completeExceptionally(new RuntimeException("Expected exception"));
+    context.assertTrue(results.isEmpty());
+    context.assertEquals(3, pool.connectionAttempts);
+
+    connects.get(1).complete(connections.get(1));
+    context.assertEquals(1, pool.getIdleCount());
+    context.assertTrue(results.isEmpty());
+
+    connects.get(2).complete(connections.get(2));
+    context.assertEquals(1, results.size());
+    context.assertTrue(results.get(0).succeeded());
+    context.assertEquals(connections.get(2), results.get(0).result());
+    context.assertEquals(2, pool.getPoolSize());
+    context.assertEquals(3, pool.connectionAttempts);
+  }
+
+  // High priority waiters are served first, but a low priority waiter still gets a connection every round
+  @Test
+  public void testPriorityLanes(TestContext context) {
+    final Async async = context.async();
+    final List<Priority> served = new ArrayList<>();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("maxPoolSize", 1),
+      this::getGoodConnection);
+
+    pool.take(result -> {
+      context.assertTrue(result.succeeded());
+      pool.take(Priority.LOW, lowResult -> {
+        served.add(Priority.LOW);
+        pool.giveBack(lowResult.result());
+      });
+      for (int i = 0; i < 9; i++) {
+        pool.take(Priority.HIGH, highResult -> {
+          served.add(Priority.HIGH);
+          pool.giveBack(highResult.result());
+        });
+      }
+      context.assertEquals(1, pool.getWaitersCount(Priority.LOW));
+      context.assertEquals(9, pool.getWaitersCount(Priority.HIGH));
+      pool.giveBack(result.result());
+      context.assertEquals(10, served.size());
+      context.assertEquals(Priority.LOW, served.get(8));
+      context.assertEquals(0, pool.getWaitersCount());
+      async.complete();
+    });
+  }
+
+  // A failed connection attempt moves the pool to the next host, and the connections to the previous host are closed
+  @Test
+  public void testHostFailover(TestContext context) {
+    final Async async = context.async();
+    final AtomicBoolean failing = new AtomicBoolean();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(new JsonObject(),
+      () -> failing.get() ? getFailingConnection() : getGoodConnection());
+    pool.setHosts(Arrays.<ConnectionPoolConfiguration>asList(null, null));
+
+    pool.take(result1 -> {
+      context.assertTrue(result1.succeeded());
+      failing.set(true);
+      pool.take(result2 -> {
+        context.assertTrue(result2.failed());
+        context.assertEquals(1, pool.getCurrentHost());
+        failing.set(false);
+        pool.giveBack(result1.result());
+        Mockito.verify(result1.result()).disconnect();
+        // the replacement connection takes over the slot
+        context.assertEquals(1, pool.getPoolSize());
+        async.complete();
+      });
+    });
+  }
+
+  // The periodic check of an idle connection keeps a healthy host, and moves the pool away from a host rejecting it
+  @Test
+  public void testHostCheck(TestContext context) {
+    completeOnCallingThread();
+    final List<Handler<Long>> checks = new ArrayList<>();
+    Mockito.doAnswer(invocation -> {
+      checks.add(invocation.getArgument(1));
+      return (long) checks.size();
+    }).when(vertx).setPeriodic(Mockito.eq(1000L), Mockito.any());
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("hostCheckInterval", 1000),
+      this::getGoodConnection);
+    pool.setHosts(Arrays.<ConnectionPoolConfiguration>asList(null, null));
+    context.assertEquals(1, checks.size());
+
+    final List<Connection> connections = new ArrayList<>();
+    pool.take(result -> connections.add(result.result()));
+    final Connection demoted = connections.get(0);
+    pool.giveBack(demoted);
+
+    checks.get(0).handle(1L);
+    context.assertEquals(0, pool.getCurrentHost());
+    context.assertEquals(1, pool.getIdleCount());
+    Mockito.verify(demoted, Mockito.never()).disconnect();
+
+    pool.verifier = connection -> {
+      final CompletableFuture<Connection> verified = new CompletableFuture<>();
+      if (connection == demoted) {
+        verified.completeExceptionally(new HostRejectedException("standby"));
+      } else {
+        verified.complete(connection);
+      }
+      return verified;
+    };
+    checks.get(0).handle(1L);
+    context.assertEquals(1, pool.getCurrentHost());
+    Mockito.verify(demoted).disconnect();
+
+    pool.close();
+    Mockito.verify(vertx).cancelTimer(1L);
+  }
+
+  // Each request for a connection is reported to the datasource pool metrics as submitted, then either begins and ends
+  // with the use of a connection, or is rejected, also when it leaves the queue on its acquire timeout or on close
+  @Test
+  public void testPoolMetrics(TestContext context) {
+    final List<String> events = new ArrayList<>();
+    final PoolMetrics<String> poolMetrics = new PoolMetrics<String>() {
+      int requests;
+
+      @Override
+      public String submitted() {
+        final String request = "request" + ++requests;
+        events.add("submitted " + request);
+        return request;
+      }
+
+      @Override
+      public String begin(String request) {
+        events.add("begin " + request);
+        return request;
+      }
+
+      @Override
+      public void rejected(String request) {
+        events.add("rejected " + request);
+      }
+
+      @Override
+      public void end(String request, boolean succeeded) {
+        events.add("end " + request + " " + succeeded);
+      }
+
+      @Override
+      public void close() {
+        events.add("close");
+      }
+    };
+    final VertxInternal vertxInternal = Mockito.mock(VertxInternal.class);
+    final VertxMetrics vertxMetrics = Mockito.mock(VertxMetrics.class);
+    Mockito.when(vertxInternal.metricsSPI()).thenReturn(vertxMetrics);
+    Mockito.doReturn(poolMetrics).when(vertxMetrics)
+      .createPoolMetrics(Mockito.eq("datasource"), Mockito.anyString(), Mockito.eq(1));
+    vertx = vertxInternal;
+    completeOnCallingThread();
+    final List<Handler<Long>> timers = stubTimers();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("maxPoolSize", 1).put("connectionAcquireTimeout", 1000L),
+      this::getGoodConnection);
+    final List<AsyncResult<Connection>> results = new ArrayList<>();
+    pool.take(results::add);
+    pool.take(results::add);
+    // the acquire timeout of the second request
+    timers.get(0).handle(1L);
+    pool.take(results::add);
+    pool.giveBack(results.get(0).result());
+    pool.take(results::add);
+    pool.close();
+    pool.giveBack(results.get(2).result());
+
+    context.assertTrue(results.get(1).cause() instanceof AcquireTimeoutException);
+    context.assertTrue(results.get(3).cause() instanceof PoolClosedException);
+    context.assertEquals(Arrays.asList(
+      "submitted request1", "begin request1",
+      "submitted request2", "rejected request2",
+      "submitted request3", "end request1 true", "begin request3",
+      "submitted request4", "rejected request4",
+      "end request3 true", "close"), events);
+  }
+
+  // The statistics of the pool reflect its connections and requests
+  @Test
+  public void testStats(TestContext context) {
+    completeOnCallingThread();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("maxPoolSize", 2),
+      this::getGoodConnection);
+    final List<Connection> connections = new ArrayList<>();
+    pool.take(result -> connections.add(result.result()));
+    pool.take(result -> connections.add(result.result()));
+    pool.take(Priority.LOW, result -> connections.add(result.result()));
+    pool.giveBack(connections.get(0));
+    pool.take(result -> connections.add(result.result()));
+
+    final JsonObject stats = pool.getStats();
+    context.assertEquals(2, stats.getInteger("poolSize"));
+    context.assertEquals(0, stats.getInteger("idleCount"));
+    context.assertEquals(2, stats.getInteger("inUseCount"));
+    context.assertEquals(1, stats.getInteger("waitersCount"));
+    context.assertEquals(1, stats.getJsonObject("waitersCountByPriority").getInteger("NORMAL"));
+    context.assertEquals(0, stats.getJsonObject("waitersCountByPriority").getInteger("LOW"));
+    context.assertEquals(1L, stats.getLong("usageCount"));
+  }
+
+  // A connection used within the validationInterval is handed out without a test, any other one is tested first
+  @Test
+  public void testValidationInterval(TestContext context) {
+    completeOnCallingThread();
+    stubTimers();
+    final ConnectionPoolConfigurationBuilder connectionConfig = new ConnectionPoolConfigurationBuilder();
+    connectionConfig.setConnectionTestTimeout(1000);
+
+    final AsyncConnectionPoolMock recentlyUsed = new AsyncConnectionPoolMock(
+      new JsonObject().put("validationInterval", 60_000),
+      connectionConfig.build(),
+      this::getTestableConnection);
+    final Connection first = takeAndGiveBack(recentlyUsed);
+    context.assertEquals(first, takeAndGiveBack(recentlyUsed));
+    context.assertEquals(0L, recentlyUsed.getValidationsPerformed());
+    context.assertEquals(1L, recentlyUsed.getValidationsSkipped());
+    Mockito.verify(first, Mockito.never()).sendQuery(Mockito.anyString());
+    recentlyUsed.now += 60_001;
+    context.assertEquals(first, takeAndGiveBack(recentlyUsed));
+    context.assertEquals(1L, recentlyUsed.getValidationsPerformed());
+    Mockito.verify(first).sendQuery("SELECT 1 AS alive");
+
+    final AsyncConnectionPoolMock alwaysTested = new AsyncConnectionPoolMock(
+      new JsonObject(),
+      connectionConfig.build(),
+      this::getTestableConnection);
+    final Connection second = takeAndGiveBack(alwaysTested);
+    context.assertEquals(second, takeAndGiveBack(alwaysTested));
+    context.assertEquals(1L, alwaysTested.getValidationsPerformed());
+    context.assertEquals(0L, alwaysTested.getValidationsSkipped());
+    Mockito.verify(second).sendQuery("SELECT 1 AS alive");
+  }
+
+  // A connection given back after its maxConnectionLifetime is closed, and a replacement takes over its slot
+  @Test
+  public void testMaxConnectionLifetime(TestContext context) {
+    completeOnCallingThread();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("maxConnectionLifetime", 50),
+      this::getGoodConnection);
+    final List<Connection> connections = new ArrayList<>();
+    pool.take(result -> connections.add(result.result()));
+    final Connection expired = connections.get(0);
+    pool.now += 50;
+    pool.giveBack(expired);
+    Mockito.verify(expired).disconnect();
+    context.assertEquals(2, pool.connectionAttempts);
+    context.assertEquals(1, pool.getPoolSize());
+
+    pool.take(result -> connections.add(result.result()));
+    context.assertNotEquals(expired, connections.get(1));
+    context.assertEquals(2, pool.connectionAttempts);
+  }
+
+  // An idle connection that reached its maxConnectionLifetime is retired by the sweep, and replaced right away
+  @Test
+  public void testIdleConnectionLifetime(TestContext context) {
+    completeOnCallingThread();
+    final List<Handler<Long>> sweeps = new ArrayList<>();
+    Mockito.doAnswer(invocation -> {
+      sweeps.add(invocation.getArgument(1));
+      return (long) sweeps.size();
+    }).when(vertx).setPeriodic(Mockito.eq(5L), Mockito.any());
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("maxConnectionLifetime", 50),
+      this::getGoodConnection);
+    final Connection expired = takeAndGiveBack(pool);
+    pool.now += 40;
+    sweeps.get(0).handle(1L);
+    Mockito.verify(expired, Mockito.never()).disconnect();
+
+    pool.now += 10;
+    sweeps.get(0).handle(1L);
+    Mockito.verify(expired).disconnect();
+    context.assertEquals(2, pool.connectionAttempts);
+    context.assertEquals(1, pool.getPoolSize());
+    context.assertEquals(1, pool.getIdleCount());
+    context.assertNotEquals(expired, takeAndGiveBack(pool));
+  }
+
+  // The target size shrinks while most connections are idle, and grows back while requests are waiting
+  @Test
+  public void testAdaptiveSizing(TestContext context) {
+    completeOnCallingThread();
+    final List<Handler<Long>> resizes = new ArrayList<>();
+    Mockito.doAnswer(invocation -> {
+      resizes.add(invocation.getArgument(1));
+      return (long) resizes.size();
+    }).when(vertx).setPeriodic(Mockito.eq(1000L), Mockito.any());
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("adaptiveSizing", true).put("adaptiveSizingInterval", 1000).put("maxPoolSize", 4),
+      this::getGoodConnection);
+    context.assertEquals(4, pool.getTargetPoolSize());
+    final List<Connection> connections = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      pool.take(result -> connections.add(result.result()));
+    }
+    connections.forEach(pool::giveBack);
+
+    resizes.get(0).handle(1L);
+    context.assertEquals(3, pool.getTargetPoolSize());
+    context.assertEquals(3, pool.getPoolSize());
+    context.assertEquals(1L, pool.getShrinksForLowUsage());
+    Mockito.verify(connections.get(0)).disconnect();
+
+    connections.clear();
+    for (int i = 0; i < 4; i++) {
+      pool.take(result -> connections.add(result.result()));
+    }
+    context.assertEquals(3, connections.size());
+    context.assertEquals(1, pool.getWaitersCount());
+
+    resizes.get(0).handle(1L);
+    context.assertEquals(4, pool.getTargetPoolSize());
+    context.assertEquals(1L, pool.getGrowthsForWaiters());
+    context.assertEquals(4, connections.size());
+    context.assertEquals(0, pool.getWaitersCount());
+  }
+
+  // By default the connection idle for the longest time is reused first
+  @Test
+  public void testFifoSelectionPolicy(TestContext context) {
+    testSelectionPolicy(context, new JsonObject(), true);
+  }
+
+  // With LIFO, the connection given back last is reused first
+  @Test
+  public void testLifoSelectionPolicy(TestContext context) {
+    testSelectionPolicy(context, new JsonObject().put("connectionSelectionPolicy", "lifo"), false);
+  }
+
+  // With MOST_RECENTLY_VALIDATED, the connection that connected or passed a test last is reused first, whatever the
+  // order in which the connections were given back
+  @Test
+  public void testMostRecentlyValidatedSelectionPolicy(TestContext context) {
+    final List<Connection> connections = testValidationSelectionPolicy("most_recently_validated");
+    final Connection second = connections.get(1);
+    context.assertEquals(Arrays.asList(second, second, second), connections.subList(2, 5));
+  }
+
+  // With LEAST_RECENTLY_VALIDATED, the connection tests rotate over the idle connections
+  @Test
+  public void testLeastRecentlyValidatedSelectionPolicy(TestContext context) {
+    final List<Connection> connections = testValidationSelectionPolicy("least_recently_validated");
+    final Connection first = connections.get(0);
+    context.assertEquals(Arrays.asList(first, connections.get(1), first), connections.subList(2, 5));
+  }
+
+  /**
+   * Opens two connections 10 ms apart and gives them back in the reverse order, then takes a connection and gives it
+   * back three times, 10 ms apart. Each of them is tested on checkout.
+   *
+   * @return the two connections opened, followed by the three connections taken
+   */
+  private List<Connection> testValidationSelectionPolicy(String policy) {
+    completeOnCallingThread();
+    stubTimers();
+    final ConnectionPoolConfigurationBuilder connectionConfig = new ConnectionPoolConfigurationBuilder();
+    connectionConfig.setConnectionTestTimeout(1000);
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("connectionSelectionPolicy", policy),
+      connectionConfig.build(),
+      this::getTestableConnection);
+    final List<Connection> connections = new ArrayList<>();
+    pool.take(result -> connections.add(result.result()));
+    pool.now += 10;
+    pool.take(result -> connections.add(result.result()));
+    pool.giveBack(connections.get(1));
+    pool.giveBack(connections.get(0));
+    for (int i = 0; i < 3; i++) {
+      pool.now += 10;
+      connections.add(takeAndGiveBack(pool));
+    }
+    return connections;
+  }
+
+  private void testSelectionPolicy(TestContext context, JsonObject config, boolean firstGivenBackReused) {
+    final Async async = context.async();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(config, this::getGoodConnection);
+
+    pool.take(result1 -> {
+      context.assertTrue(result1.succeeded());
+      pool.take(result2 -> {
+        context.assertTrue(result2.succeeded());
+        pool.giveBack(result1.result());
+        pool.giveBack(result2.result());
+        pool.take(result3 -> {
+          context.assertTrue(result3.succeeded());
+          context.assertEquals(firstGivenBackReused ? result1.result() : result2.result(), result3.result());
+          async.complete();
+        });
+      });
+    });
+  }
+
+  // Closing the pool fails the waiting requests and completes once the connection in use is given back
+  @Test
+  public void testCloseDrainsPool(TestContext context) {
+    final Async async = context.async();
+    final List<Handler<Long>> timers = stubTimers();
+    final AtomicBoolean closed = new AtomicBoolean();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("maxPoolSize", 1),
+      this::getGoodConnection);
+
+    pool.take(result -> {
+      context.assertTrue(result.succeeded());
+      pool.take(waiting -> {
+        context.assertTrue(waiting.failed());
+        context.assertTrue(waiting.cause() instanceof PoolClosedException);
+      });
+      pool.close(ar -> closed.set(true));
+      context.assertEquals(0, pool.getWaitersCount());
+      context.assertEquals(1, timers.size());
+      context.assertFalse(closed.get());
+      pool.take(rejected -> context.assertTrue(rejected.cause() instanceof PoolClosedException));
+      pool.giveBack(result.result());
+      Mockito.verify(result.result()).disconnect();
+      context.assertTrue(closed.get());
+      context.assertEquals(0, pool.getPoolSize());
+      async.complete();
+    });
+  }
+
+  // The connections still in use after the closeTimeout are closed anyway
+  @Test
+  public void testCloseTimeout(TestContext context) {
+    final Async async = context.async();
+    final List<Handler<Long>> timers = stubTimers();
+    final AtomicBoolean closed = new AtomicBoolean();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(new JsonObject(), this::getGoodConnection);
+
+    pool.take(result -> {
+      context.assertTrue(result.succeeded());
+      pool.close(ar -> closed.set(true));
+      context.assertFalse(closed.get());
+      timers.get(0).handle(1L);
+      Mockito.verify(result.result()).disconnect();
+      context.assertTrue(closed.get());
+      async.complete();
+    });
+  }
+
+  // Closing the pool gives up the connection attempts waiting to be retried
+  @Test
+  public void testCloseCancelsRetries(TestContext context) {
+    final List<Handler<Long>> timers = stubTimers();
+    final AtomicBoolean closed = new AtomicBoolean();
+    final AtomicBoolean rejected = new AtomicBoolean();
+
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(
+      new JsonObject().put("maxConnectionRetries", 1).put("connectionRetryDelay", 100),
+      this::getFailingConnection);
+
+    pool.take(result -> rejected.set(result.cause() instanceof PoolClosedException));
+    context.assertEquals(1, timers.size());
+    context.assertEquals(1, pool.getCreatingCount());
+    pool.close(ar -> closed.set(true));
+    Mockito.verify(vertx).cancelTimer(1L);
+    context.assertTrue(rejected.get());
+    context.assertTrue(closed.get());
+    context.assertEquals(0, pool.getPoolSize());
+    // a retry already being fired gives up too
+    timers.get(0).handle(1L);
+    context.assertEquals(1, pool.connectionAttempts);
+  }
+
+  // Completes the connection attempts on the calling thread, instead of the common pool
+  private void completeOnCallingThread() {
+    // a ContextInternal also fits when the Vert.x instance is a VertxInternal
+    final Context context = Mockito.mock(ContextInternal.class);
+    Mockito.doAnswer(invocation -> {
+      final Handler<Void> handler = invocation.getArgument(0);
+      handler.handle(null);
+      return null;
+    }).when(context).runOnContext(Mockito.any());
+    Mockito.when(vertx.getOrCreateContext()).thenReturn(context);
+    Mockito.when(vertx.nettyEventLoopGroup()).thenReturn(Mockito.mock(EventLoopGroup.class));
+  }
+
+  private List<Handler<Long>> stubTimers() {
+    final List<Handler<Long>> timers = new ArrayList<>();
+    Mockito.doAnswer(invocation -> {
+      timers.add(invocation.getArgument(1));
+      return (long) timers.size();
+    }).when(vertx).setTimer(Mockito.anyLong(), Mockito.any());
+    return timers;
+  }
+
   private Connection getGoodConnection() {
     final Connection connection = Mockito.mock(Connection.class);
     Mockito.when(connection.connect()).thenAnswer(new Answer<CompletableFuture<? extends Connection>>(){
@@ -193,6 +911,22 @@ public class AsyncConnectionPoolTest {
     return connection;
   }
 
+  // A connection answering the connection tests
+  private Connection getTestableConnection() {
+    final Connection connection = getGoodConnection();
+    final QueryResult alive = new QueryResult(0, "", Mockito.mock(ResultSet.class));
+    Mockito.when(connection.sendQuery(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(alive));
+    return connection;
+  }
+
+  // Takes a connection from the pool and gives it back right away
+  private Connection takeAndGiveBack(AsyncConnectionPool pool) {
+    final List<Connection> connections = new ArrayList<>();
+    pool.take(result -> connections.add(result.result()));
+    pool.giveBack(connections.get(0));
+    return connections.get(0);
+  }
+
   private Connection getFailingConnection() {
     throw new RuntimeException("Expected exception");
   }
@@ -204,10 +938,18 @@ public class AsyncConnectionPoolTest {
 
     int connectionAttempts = 0;
     int createdConnections = 0;
+    // the clock of the pool
+    long now;
     private Supplier<Connection> connectionSupplier;
+    Function<Connection, CompletableFuture<Connection>> verifier;
 
     AsyncConnectionPoolMock(JsonObject globalConfig, Supplier<Connection> connectionSupplier) {
-      super(AsyncConnectionPoolTest.this.vertx, globalConfig, null);
+      this(globalConfig, null, connectionSupplier);
+    }
+
+    AsyncConnectionPoolMock(JsonObject globalConfig, ConnectionPoolConfiguration connectionConfig,
+                            Supplier<Connection> connectionSupplier) {
+      super(AsyncConnectionPoolTest.this.vertx, globalConfig, connectionConfig);
       this.connectionSupplier = connectionSupplier;
     }
 
@@ -218,5 +960,15 @@ public class AsyncConnectionPoolTest {
       this.createdConnections++;
       return connection;
     }
+
+    @Override
+    protected CompletableFuture<Connection> verify(Connection connection) {
+      return verifier != null ? verifier.apply(connection) : super.verify(connection);
+    }
+
+    @Override
+    long now() {
+      return now;
+    }
   }
 }
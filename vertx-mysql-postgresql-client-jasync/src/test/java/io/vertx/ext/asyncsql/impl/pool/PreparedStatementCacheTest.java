@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+
+package io.vertx.ext.asyncsql.impl.pool;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreparedStatementCacheTest {
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  @Test
+  public void testLeastRecentlyUsedEviction() {
+    PreparedStatementCache cache = new PreparedStatementCache(2, 100, hits, misses, evictions);
+    assertTrue(cache.use("SELECT 1"));
+    assertTrue(cache.use("SELECT 2"));
+    assertTrue(cache.use("SELECT 1"));
+    assertEquals(Collections.emptyList(), cache.drainEvicted());
+    assertTrue(cache.use("SELECT 3"));
+    assertTrue(cache.use("SELECT 4"));
+    assertEquals(Arrays.asList("SELECT 2", "SELECT 1"), cache.drainEvicted());
+    assertEquals(Collections.emptyList(), cache.drainEvicted());
+    assertTrue(cache.use("SELECT 4"));
+    assertEquals(2, hits.get());
+    assertEquals(4, misses.get());
+    assertEquals(2, evictions.get());
+  }
+
+  // A statement used again after its eviction, before the connection is given back, is kept prepared
+  @Test
+  public void testEvictedStatementReused() {
+    PreparedStatementCache cache = new PreparedStatementCache(1, 100, hits, misses, evictions);
+    assertTrue(cache.use("SELECT 1"));
+    assertTrue(cache.use("SELECT 2"));
+    assertTrue(cache.use("SELECT 1"));
+    // given back: only the statement evicted last is closed
+    assertEquals(Collections.singletonList("SELECT 2"), cache.drainEvicted());
+    assertTrue(cache.use("SELECT 1"));
+    assertEquals(2, hits.get());
+    assertEquals(2, misses.get());
+    assertEquals(2, evictions.get());
+  }
+
+  @Test
+  public void testLongStatementNotKept() {
+    PreparedStatementCache cache = new PreparedStatementCache(2, 8, hits, misses, evictions);
+    assertFalse(cache.use("SELECT 1 + 1"));
+    assertFalse(cache.use("SELECT 1 + 1"));
+    assertEquals(0, hits.get());
+    assertEquals(2, misses.get());
+  }
+
+  @Test
+  public void testDisabled() {
+    PreparedStatementCache cache = new PreparedStatementCache(0, 100, hits, misses, evictions);
+    assertFalse(cache.use("SELECT 1"));
+    assertEquals(Collections.emptyList(), cache.drainEvicted());
+  }
+}
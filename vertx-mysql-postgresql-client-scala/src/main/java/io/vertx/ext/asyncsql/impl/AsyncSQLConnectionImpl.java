@@ -200,12 +200,12 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
 
   @Override
   public SQLConnection commit(Handler<AsyncResult<Void>> handler) {
-    return endAndStartTransaction("COMMIT", handler);
+    return endTransaction("COMMIT", handler);
   }
 
   @Override
   public SQLConnection rollback(Handler<AsyncResult<Void>> handler) {
-    return endAndStartTransaction("ROLLBACK", handler);
+    return endTransaction("ROLLBACK", handler);
   }
 
   @Override
@@ -269,29 +269,32 @@ public abstract class AsyncSQLConnectionImpl implements SQLConnection {
     return (C) connection;
   }
 
-  private SQLConnection endAndStartTransaction(String command, Handler<AsyncResult<Void>> handler) {
-    if (inTransaction) {
+  /**
+   * Ends the current transaction. The next transaction is only started by the next statement, so that ending a
+   * transaction before closing the connection takes a single round trip.
+   */
+  private SQLConnection endTransaction(String command, Handler<AsyncResult<Void>> handler) {
+    boolean end;
+    synchronized (this) {
+      end = inTransaction;
       inTransaction = false;
+    }
+    if (end) {
       ScalaUtils.scalaToVertx(connection.sendQuery(command), executionContext).setHandler(
           ar -> {
             if (ar.failed()) {
               handler.handle(Future.failedFuture(ar.cause()));
             } else {
-              ScalaUtils.scalaToVertx(connection.sendQuery("BEGIN"), executionContext).setHandler(
-                  ar2 -> {
-                    if (ar2.failed()) {
-                      handler.handle(Future.failedFuture(ar.cause()));
-                    } else {
-                      inTransaction = true;
-                      handler.handle(Future.succeededFuture());
-                    }
-                  }
-              );
+              handler.handle(Future.succeededFuture());
             }
           });
     } else {
-      handler.handle(Future.failedFuture(
-          new IllegalStateException("Not in transaction currently")));
+      if (inAutoCommit) {
+        handler.handle(Future.failedFuture(
+            new IllegalStateException("Not in transaction currently")));
+      } else {
+        handler.handle(Future.succeededFuture());
+      }
     }
     return this;
   }
@@ -18,10 +18,13 @@ package io.vertx.ext.asyncsql.impl.pool;
 
 import com.github.mauricio.async.db.Configuration;
 import com.github.mauricio.async.db.Connection;
+import io.netty.channel.EventLoop;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -29,10 +32,30 @@ import io.vertx.ext.asyncsql.impl.ScalaUtils;
 import io.vertx.ext.asyncsql.impl.VertxEventLoopExecutionContext;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages a pool of connection.
+ * <p>
+ * By default the pool holds a single set of idle connections and waiters. When {@code eventLoopSharding} is enabled,
+ * each event loop gets its own shard (idle connections and waiters) so that callers running on different event loops
+ * do not contend on the same monitor. The {@code maxPoolSize} is shared by all the shards, and a shard that runs dry
+ * borrows idle connections from the other shards before queueing the request.
+ * <p>
+ * {@code eventLoopAffinity} implies sharding: connections are opened on the event loop of the caller and always return
+ * to the shard of their own event loop, so that callers mostly get connections driven by their own event loop.
+ * <p>
+ * Connections idle for {@code connectionReleaseDelay} milliseconds are closed by a single periodic sweep over the idle
+ * connections.
  *
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
@@ -41,33 +64,144 @@ public abstract class AsyncConnectionPool {
   public static final int DEFAULT_MAX_POOL_SIZE = 10;
   public static final int DEFAULT_MAX_CONNECTION_RETRIES = 0;       // No connection retries by default
   public static final int DEFAULT_CONNECTION_RETRY_DELAY = 5_000;   // 5 seconds between retries by default
+  public static final boolean DEFAULT_EVENT_LOOP_SHARDING = false;  // a single shard by default
+  public static final boolean DEFAULT_EVENT_LOOP_AFFINITY = false;  // connections are opened on any event loop
+  public static final long DEFAULT_CONNECTION_RELEASE_DELAY = 0L;   // idle connections are kept forever by default
 
   private static final Logger logger = LoggerFactory.getLogger(AsyncConnectionPool.class);
 
   private final int maxPoolSize;
   private final int maxConnectionRetries;
   private final int connectionRetryDelay;
+  private final boolean eventLoopSharding;
+  private final boolean eventLoopAffinity;
+  private final long connectionReleaseDelay;
+  private final long releaseTimerId;
 
   protected final Configuration connectionConfig;
   protected final Vertx vertx;
 
-  private int poolSize = 0;
-  private final Deque<Connection> availableConnections = new ArrayDeque<>();
-  private final Deque<Handler<AsyncResult<Connection>>> waiters = new ArrayDeque<>();
+  private final AtomicInteger poolSize = new AtomicInteger();
+  private final AtomicInteger waitersCount = new AtomicInteger();
+  private final Shard defaultShard = new Shard(null);
+  private final Map<EventLoop, Shard> shards = new ConcurrentHashMap<>();
+  // the default shard followed by the shards of the event loops, replaced when a shard is added
+  private volatile List<Shard> shardList = Collections.singletonList(defaultShard);
+  // the event loop driving each connection, with eventLoopAffinity
+  private final Map<Connection, EventLoop> eventLoops = new ConcurrentHashMap<>();
+  private final LongAdder affinityHits = new LongAdder();
+  private final LongAdder affinityMisses = new LongAdder();
 
   public AsyncConnectionPool(Vertx vertx, JsonObject globalConfig, Configuration connectionConfig) {
     this.vertx = vertx;
     this.maxPoolSize = globalConfig.getInteger("maxPoolSize", DEFAULT_MAX_POOL_SIZE);
     this.maxConnectionRetries = globalConfig.getInteger("maxConnectionRetries", DEFAULT_MAX_CONNECTION_RETRIES);
     this.connectionRetryDelay = globalConfig.getInteger("connectionRetryDelay", DEFAULT_CONNECTION_RETRY_DELAY);
+    this.eventLoopAffinity = globalConfig.getBoolean("eventLoopAffinity", DEFAULT_EVENT_LOOP_AFFINITY);
+    this.eventLoopSharding = eventLoopAffinity
+      || globalConfig.getBoolean("eventLoopSharding", DEFAULT_EVENT_LOOP_SHARDING);
+    this.connectionReleaseDelay = globalConfig.getLong("connectionReleaseDelay", DEFAULT_CONNECTION_RELEASE_DELAY);
     this.connectionConfig = connectionConfig;
+    if (connectionReleaseDelay > 0) {
+      // idle connections are released between connectionReleaseDelay and 1.5 times connectionReleaseDelay
+      this.releaseTimerId = vertx.setPeriodic(Math.max(1, connectionReleaseDelay / 2), id -> releaseIdleConnections());
+    } else {
+      this.releaseTimerId = -1;
+    }
   }
 
   protected abstract Connection create();
 
-  private synchronized void createConnection(Handler<AsyncResult<Connection>> handler) {
-    poolSize += 1;
-    createAndConnect(new Handler<AsyncResult<Connection>>() {
+  /**
+   * Creates a connection driven by the given event loop. Pools that cannot choose the event loop of their connections
+   * ignore it.
+   *
+   * @param eventLoop the event loop of the caller, {@code null} when any event loop fits
+   */
+  protected Connection create(EventLoop eventLoop) {
+    return create();
+  }
+
+  public int getPoolSize() {
+    return poolSize.get();
+  }
+
+  /**
+   * @return the number of connections handed out on the event loop driving them, with {@code eventLoopAffinity}
+   */
+  public long getAffinityHits() {
+    return affinityHits.sum();
+  }
+
+  /**
+   * @return the number of connections handed out on another event loop than the one driving them, with
+   * {@code eventLoopAffinity}
+   */
+  public long getAffinityMisses() {
+    return affinityMisses.sum();
+  }
+
+  /**
+   * @return the shard of the event loop running the caller, or the default shard when sharding is disabled or the
+   * caller does not run on a Vert.x context
+   */
+  private Shard currentShard() {
+    return eventLoopSharding ? shardOf(currentEventLoop()) : defaultShard;
+  }
+
+  private Shard shardOf(EventLoop eventLoop) {
+    if (eventLoop == null) {
+      return defaultShard;
+    }
+    Shard shard = shards.get(eventLoop);
+    if (shard == null) {
+      shard = addShard(eventLoop);
+    }
+    return shard;
+  }
+
+  /**
+   * Creates the shard of an event loop, and publishes a new list of all the shards, which never changes otherwise.
+   */
+  private Shard addShard(EventLoop eventLoop) {
+    synchronized (shards) {
+      Shard shard = shards.get(eventLoop);
+      if (shard == null) {
+        shard = new Shard(eventLoop);
+        shards.put(eventLoop, shard);
+        List<Shard> list = new ArrayList<>(shardList);
+        list.add(shard);
+        shardList = Collections.unmodifiableList(list);
+      }
+      return shard;
+    }
+  }
+
+  /**
+   * @return the event loop running the caller, or {@code null} when the caller does not run on a Vert.x context
+   */
+  private static EventLoop currentEventLoop() {
+    Context context = Vertx.currentContext();
+    return context instanceof ContextInternal ? ((ContextInternal) context).nettyEventLoop() : null;
+  }
+
+  private List<Shard> allShards() {
+    return shardList;
+  }
+
+  private boolean reserveSlot() {
+    int size;
+    do {
+      size = poolSize.get();
+      if (size >= maxPoolSize) {
+        return false;
+      }
+    } while (!poolSize.compareAndSet(size, size + 1));
+    return true;
+  }
+
+  private void createConnection(EventLoop eventLoop, Handler<AsyncResult<Connection>> handler) {
+    createAndConnect(eventLoop, new Handler<AsyncResult<Connection>>() {
       int retries = 0;
       @Override
       public void handle(AsyncResult<Connection> connectionResult) {
@@ -78,10 +212,10 @@ public abstract class AsyncConnectionPool {
           logger.debug("Error creating connection. Waiting " + connectionRetryDelay + " ms for retry " +
             retries + (maxConnectionRetries >= 0 ? " of " + maxConnectionRetries : ""));
           vertx.setTimer(connectionRetryDelay, timerId ->
-            createAndConnect(this) // Try to connect again using this handler
+            createAndConnect(eventLoop, this) // Try to connect again using this handler
           );
         } else {
-          poolSize -= 1;
+          poolSize.decrementAndGet();
           notifyWaitersAboutAvailableConnection();
           handler.handle(connectionResult);
         }
@@ -89,67 +223,269 @@ public abstract class AsyncConnectionPool {
     });
   }
 
-  private synchronized void createAndConnect(Handler<AsyncResult<Connection>> handler) {
+  private void createAndConnect(EventLoop eventLoop, Handler<AsyncResult<Connection>> handler) {
     try {
-      create()
+      Connection connection = create(eventLoop);
+      if (eventLoop != null) {
+        eventLoops.put(connection, eventLoop);
+      }
+      Handler<AsyncResult<Connection>> connectHandler = ar -> {
+        if (ar.failed()) {
+          eventLoops.remove(connection);
+        }
+        handler.handle(ar);
+      };
+      connection
         .connect()
-        .onComplete(ScalaUtils.toFunction1(handler), VertxEventLoopExecutionContext.create(vertx));
+        .onComplete(ScalaUtils.toFunction1(connectHandler), VertxEventLoopExecutionContext.create(vertx));
     } catch (Throwable e) {
       logger.info("creating a connection went wrong", e);
       handler.handle(Future.failedFuture(e));
     }
   }
 
-  private synchronized void waitForAvailableConnection(Handler<AsyncResult<Connection>> handler) {
-    waiters.add(handler);
+  public void take(Handler<AsyncResult<Connection>> handler) {
+    EventLoop eventLoop = eventLoopAffinity ? currentEventLoop() : null;
+    if (eventLoop == null) {
+      currentShard().take(handler);
+      return;
+    }
+    currentShard().take(ar -> {
+      if (ar.succeeded()) {
+        (eventLoops.get(ar.result()) == eventLoop ? affinityHits : affinityMisses).increment();
+      }
+      handler.handle(ar);
+    });
   }
 
-  private synchronized void createOrWaitForAvailableConnection(Handler<AsyncResult<Connection>> handler) {
-    if (poolSize < maxPoolSize) {
-      createConnection(handler);
+  private void checkout(Shard shard, Connection connection, Handler<AsyncResult<Connection>> handler) {
+    if (connection.isConnected()) {
+      handler.handle(Future.succeededFuture(connection));
     } else {
-      waitForAvailableConnection(handler);
+      discard(connection);
+      shard.take(handler);
     }
   }
 
-  public synchronized void take(Handler<AsyncResult<Connection>> handler) {
-    Connection connection = availableConnections.poll();
-    if (connection == null) {
-      createOrWaitForAvailableConnection(handler);
-    } else {
-      if (connection.isConnected()) {
-        handler.handle(Future.succeededFuture(connection));
-      } else {
-        poolSize -= 1;
-        take(handler);
+  /**
+   * Forgets a connection that is no longer part of the pool, and frees its slot.
+   */
+  private void discard(Connection connection) {
+    eventLoops.remove(connection);
+    poolSize.decrementAndGet();
+  }
+
+  private void notifyWaitersAboutAvailableConnection() {
+    Shard shard = currentShard();
+    Handler<AsyncResult<Connection>> handler = pollWaiter(shard);
+    if (handler != null) {
+      shard.take(handler);
+    }
+  }
+
+  /**
+   * Polls a waiter of the given shard, or of any other shard when sharding is enabled.
+   */
+  private Handler<AsyncResult<Connection>> pollWaiter(Shard shard) {
+    Handler<AsyncResult<Connection>> handler = shard.pollWaiter();
+    if (handler == null && eventLoopSharding && waitersCount.get() > 0) {
+      for (Shard other : allShards()) {
+        if ((handler = other.pollWaiter()) != null) {
+          break;
+        }
       }
     }
+    return handler;
   }
 
-  private synchronized void notifyWaitersAboutAvailableConnection() {
-    Handler<AsyncResult<Connection>> handler = waiters.poll();
-    if (handler != null) {
-      take(handler);
+  /**
+   * Polls an idle connection from any shard but the given one.
+   */
+  private Connection borrowAvailable(Shard shard) {
+    for (Shard other : allShards()) {
+      if (other != shard) {
+        Connection connection = other.pollAvailable();
+        if (connection != null) {
+          return connection;
+        }
+      }
     }
+    return null;
   }
 
-  public synchronized void giveBack(Connection connection) {
+  /**
+   * Hands idle connections of any shard over to waiters of any shard. A shard only queues a waiter after it
+   * incremented {@link #waitersCount}, and a shard always checks that counter after it stored an idle connection, so
+   * one of both sides is guaranteed to see the other.
+   */
+  private void transferIdleConnectionsToWaiters(Shard shard) {
+    while (waitersCount.get() > 0) {
+      Connection connection = shard.pollAvailable();
+      if (connection == null && (connection = borrowAvailable(shard)) == null) {
+        return;
+      }
+      Handler<AsyncResult<Connection>> handler = pollWaiter(shard);
+      if (handler == null) {
+        shard.offerAvailable(connection);
+        return;
+      }
+      checkout(shard, connection, handler);
+    }
+  }
+
+  public void giveBack(Connection connection) {
     if (connection.isConnected()) {
-      availableConnections.add(connection);
+      EventLoop eventLoop = eventLoops.get(connection);
+      (eventLoop != null ? shardOf(eventLoop) : currentShard()).giveBack(connection);
     } else {
-      poolSize -= 1;
+      discard(connection);
+      notifyWaitersAboutAvailableConnection();
+    }
+  }
+
+  /**
+   * @return the current time in milliseconds, as seen by the idle connection sweep
+   */
+  long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Closes the connections that have been idle for {@code connectionReleaseDelay}.
+   */
+  void releaseIdleConnections() {
+    long now = now();
+    for (Shard shard : allShards()) {
+      for (Connection connection : shard.releaseIdle(now)) {
+        discard(connection);
+        connection.disconnect();
+      }
     }
-    notifyWaitersAboutAvailableConnection();
   }
 
-  public synchronized void close() {
-    availableConnections.forEach(Connection::disconnect);
+  public void close() {
+    if (releaseTimerId != -1) {
+      vertx.cancelTimer(releaseTimerId);
+    }
+    for (Shard shard : allShards()) {
+      shard.close();
+    }
   }
 
-  public synchronized void close(Handler<AsyncResult<Void>> handler) {
+  public void close(Handler<AsyncResult<Void>> handler) {
     close();
     if (handler != null) {
       handler.handle(Future.succeededFuture());
     }
   }
+
+  /**
+   * The idle connections and waiters of one event loop (or of the whole pool when sharding is disabled). All the
+   * state of a shard is guarded by the shard monitor.
+   */
+  private class Shard {
+
+    // the event loop of the shard, null for the default shard
+    private final EventLoop eventLoop;
+    private final Deque<Connection> availableConnections = new ArrayDeque<>();
+    private final Deque<Handler<AsyncResult<Connection>>> waiters = new ArrayDeque<>();
+    // when each idle connection was made available, with connectionReleaseDelay
+    private final Map<Connection, Long> idleSince = new HashMap<>();
+
+    Shard(EventLoop eventLoop) {
+      this.eventLoop = eventLoop;
+    }
+
+    void take(Handler<AsyncResult<Connection>> handler) {
+      Connection connection;
+      synchronized (this) {
+        connection = pollAvailable();
+        if (connection == null && !eventLoopSharding && !reserveSlot()) {
+          waitForAvailableConnection(handler);
+          return;
+        }
+      }
+      if (connection == null && eventLoopSharding) {
+        // this shard ran dry, borrow from the other shards before opening a new connection
+        connection = borrowAvailable(this);
+        if (connection == null && !reserveSlot()) {
+          waitForAvailableConnection(handler);
+          transferIdleConnectionsToWaiters(this);
+          return;
+        }
+      }
+      if (connection == null) {
+        createConnection(eventLoopAffinity ? eventLoop : null, handler);
+      } else {
+        checkout(this, connection, handler);
+      }
+    }
+
+    void giveBack(Connection connection) {
+      Handler<AsyncResult<Connection>> handler;
+      synchronized (this) {
+        handler = pollWaiter();
+        if (handler == null) {
+          offerAvailable(connection);
+        }
+      }
+      if (handler != null) {
+        checkout(this, connection, handler);
+      } else if (eventLoopSharding) {
+        transferIdleConnectionsToWaiters(this);
+      }
+    }
+
+    synchronized Connection pollAvailable() {
+      Connection connection = availableConnections.poll();
+      if (connection != null) {
+        idleSince.remove(connection);
+      }
+      return connection;
+    }
+
+    synchronized void offerAvailable(Connection connection) {
+      availableConnections.add(connection);
+      if (connectionReleaseDelay > 0) {
+        idleSince.put(connection, now());
+      }
+    }
+
+    /**
+     * Removes the connections idle for {@code connectionReleaseDelay}.
+     *
+     * @return the removed connections, to be disconnected
+     */
+    synchronized List<Connection> releaseIdle(long now) {
+      List<Connection> released = new ArrayList<>();
+      for (Iterator<Connection> iterator = availableConnections.iterator(); iterator.hasNext(); ) {
+        Connection connection = iterator.next();
+        Long since = idleSince.get(connection);
+        if (since != null && now - since >= connectionReleaseDelay) {
+          iterator.remove();
+          idleSince.remove(connection);
+          released.add(connection);
+        }
+      }
+      return released;
+    }
+
+    private synchronized void waitForAvailableConnection(Handler<AsyncResult<Connection>> handler) {
+      waitersCount.incrementAndGet();
+      waiters.add(handler);
+    }
+
+    synchronized Handler<AsyncResult<Connection>> pollWaiter() {
+      Handler<AsyncResult<Connection>> handler = waiters.poll();
+      if (handler != null) {
+        waitersCount.decrementAndGet();
+      }
+      return handler;
+    }
+
+    synchronized void close() {
+      idleSince.clear();
+      availableConnections.forEach(Connection::disconnect);
+    }
+  }
 }
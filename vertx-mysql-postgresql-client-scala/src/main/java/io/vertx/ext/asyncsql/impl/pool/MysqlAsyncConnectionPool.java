@@ -20,6 +20,7 @@ import com.github.mauricio.async.db.Configuration;
 import com.github.mauricio.async.db.Connection;
 import com.github.mauricio.async.db.mysql.MySQLConnection;
 import com.github.mauricio.async.db.mysql.util.CharsetMapper;
+import io.netty.channel.EventLoop;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.asyncsql.impl.VertxEventLoopExecutionContext;
@@ -37,8 +38,16 @@ public class MysqlAsyncConnectionPool extends AsyncConnectionPool {
 
   @Override
   protected Connection create() {
+    return create(vertx.nettyEventLoopGroup().next());
+  }
+
+  @Override
+  protected Connection create(EventLoop eventLoop) {
+    if (eventLoop == null) {
+      return create();
+    }
     return new MySQLConnection(connectionConfig, CharsetMapper.Instance(),
-        vertx.nettyEventLoopGroup().next(),
+        eventLoop,
         VertxEventLoopExecutionContext.create(vertx)
     );
   }
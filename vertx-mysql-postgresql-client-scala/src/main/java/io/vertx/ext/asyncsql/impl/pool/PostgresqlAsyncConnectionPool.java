@@ -21,6 +21,7 @@ import com.github.mauricio.async.db.Connection;
 import com.github.mauricio.async.db.postgresql.PostgreSQLConnection;
 import com.github.mauricio.async.db.postgresql.column.PostgreSQLColumnDecoderRegistry;
 import com.github.mauricio.async.db.postgresql.column.PostgreSQLColumnEncoderRegistry;
+import io.netty.channel.EventLoop;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.asyncsql.impl.VertxEventLoopExecutionContext;
@@ -38,11 +39,19 @@ public class PostgresqlAsyncConnectionPool extends AsyncConnectionPool {
 
   @Override
   protected Connection create() {
+    return create(vertx.nettyEventLoopGroup().next());
+  }
+
+  @Override
+  protected Connection create(EventLoop eventLoop) {
+    if (eventLoop == null) {
+      return create();
+    }
     return new PostgreSQLConnection(
         connectionConfig,
         PostgreSQLColumnEncoderRegistry.Instance(),
         PostgreSQLColumnDecoderRegistry.Instance(),
-        vertx.nettyEventLoopGroup().next(),
+        eventLoop,
         VertxEventLoopExecutionContext.create(vertx)
     );
   }
@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package io.vertx.ext.asyncsql.impl.pool;
+
+import com.github.mauricio.async.db.Connection;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import scala.concurrent.impl.Promise;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
+
+@RunWith(VertxUnitRunner.class)
+public class AsyncConnectionPoolReleaseTest {
+  private static final JsonObject globalConfiguration = new JsonObject()
+      .put("maxPoolSize", 3)
+      .put("connectionReleaseDelay", 10);
+
+  private Vertx vertx;
+  /** Timers in first in first out order */
+  private Map<Long, Handler<Long>> timers = new LinkedHashMap<>();
+  /** The clock of the idle connection sweep */
+  private long now;
+
+  @Before
+  public void setUp() {
+    this.vertx = Mockito.mock(Vertx.class);
+    Mockito.when(vertx.setPeriodic(Mockito.anyLong(), Mockito.any())).then(invocation -> {
+      long timerId = ThreadLocalRandom.current().nextLong();
+      Handler<Long> handler = invocation.getArgument(1);
+      timers.put(timerId, handler);
+      return timerId;
+    });
+    Mockito.when(vertx.cancelTimer(Mockito.anyLong())).then(invocation -> {
+      long timerId = invocation.getArgument(0);
+      Handler<Long> handler = timers.remove(timerId);
+      return handler != null;
+    });
+  }
+
+  @After
+  public void allTimersWereCancelled(TestContext context) {
+    context.assertEquals(0, timers.size());
+  }
+
+  private void sweep(long elapsed) {
+    now += elapsed;
+    for (Entry<Long, Handler<Long>> entry : new ArrayList<>(timers.entrySet())) {
+      entry.getValue().handle(entry.getKey());
+    }
+  }
+
+  @Test
+  public void releaseOneConnection(TestContext context) throws Exception {
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock();
+    context.assertEquals(1, timers.size());
+    pool.take(context.asyncAssertSuccess(connection -> {
+      pool.giveBack(connection);
+      sweep(5);
+      context.assertEquals(1, pool.getPoolSize());
+      sweep(5);
+      context.assertEquals(0, pool.getPoolSize());
+      Mockito.verify(connection).disconnect();
+      pool.close();
+    }));
+  }
+
+  @Test
+  public void releaseIdleConnectionsOnly(TestContext context) throws Exception {
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock();
+    pool.take(context.asyncAssertSuccess(connection1 -> {
+      pool.take(context.asyncAssertSuccess(connection2 -> {
+        pool.giveBack(connection1);
+        sweep(5);
+        pool.giveBack(connection2);
+        sweep(5);
+        // only the connection idle for the whole release delay is released
+        context.assertEquals(1, pool.getPoolSize());
+        Mockito.verify(connection1).disconnect();
+        Mockito.verify(connection2, Mockito.never()).disconnect();
+        sweep(5);
+        context.assertEquals(0, pool.getPoolSize());
+        pool.close();
+      }));
+    }));
+  }
+
+  @Test
+  public void keepTakenConnection(TestContext context) throws Exception {
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock();
+    pool.take(context.asyncAssertSuccess(connection -> {
+      pool.giveBack(connection);
+      sweep(5);
+      pool.take(context.asyncAssertSuccess(connection2 -> {
+        context.assertEquals(connection, connection2);
+        sweep(10);
+        context.assertEquals(1, pool.getPoolSize());
+        pool.giveBack(connection);
+        sweep(5);
+        // idle again for less than the release delay
+        context.assertEquals(1, pool.getPoolSize());
+        sweep(5);
+        context.assertEquals(0, pool.getPoolSize());
+        pool.close();
+      }));
+    }));
+  }
+
+  @Test
+  public void noSweepWithoutReleaseDelay(TestContext context) throws Exception {
+    final AsyncConnectionPool pool = new AsyncConnectionPoolMock(new JsonObject().put("maxPoolSize", 3));
+    context.assertEquals(0, timers.size());
+    pool.close();
+  }
+
+  private class AsyncConnectionPoolMock extends AsyncConnectionPool {
+    AsyncConnectionPoolMock() {
+      this(globalConfiguration);
+    }
+
+    AsyncConnectionPoolMock(JsonObject config) {
+      super(AsyncConnectionPoolReleaseTest.this.vertx, config, null);
+    }
+
+    @Override
+    long now() {
+      return now;
+    }
+
+    @Override
+    protected Connection create() {
+      final Connection connection = Mockito.mock(Connection.class);
+      Mockito.when(connection.connect())
+        .thenReturn(new Promise.DefaultPromise<Connection>().success(connection).future());
+      Mockito.when(connection.isConnected()).thenReturn(true);
+      return connection;
+    }
+  }
+}
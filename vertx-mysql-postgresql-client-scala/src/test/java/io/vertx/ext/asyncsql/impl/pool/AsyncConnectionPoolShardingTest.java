@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2015 Red Hat, Inc.
+ *
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  and Apache License v2.0 which accompanies this distribution.
+ *
+ *  The Eclipse Public License is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  The Apache License v2.0 is available at
+ *  http://www.opensource.org/licenses/apache2.0.php
+ *
+ *  You may elect to redistribute this code under either of these licenses.
+ */
+package io.vertx.ext.asyncsql.impl.pool;
+
+import com.github.mauricio.async.db.Connection;
+import io.netty.channel.EventLoop;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import scala.concurrent.impl.Promise;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(VertxUnitRunner.class)
+public class AsyncConnectionPoolShardingTest {
+
+  private static final JsonObject globalConfiguration = new JsonObject()
+    .put("maxPoolSize", 1)
+    .put("eventLoopSharding", true);
+
+  private static final JsonObject affinityConfiguration = new JsonObject()
+    .put("maxPoolSize", 2)
+    .put("eventLoopAffinity", true);
+
+  private Vertx vertx;
+  private Context first;
+  private Context second;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    // each context created outside of Vert.x is bound to the next event loop
+    first = vertx.getOrCreateContext();
+    second = vertx.getOrCreateContext();
+  }
+
+  @After
+  public void tearDown(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testBorrowFromOtherShard(TestContext context) {
+    final Async async = context.async();
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(globalConfiguration);
+
+    first.runOnContext(v -> pool.take(context.asyncAssertSuccess(connection -> {
+      pool.giveBack(connection);
+      second.runOnContext(v2 -> pool.take(context.asyncAssertSuccess(borrowed -> {
+        context.assertEquals(connection, borrowed);
+        context.assertEquals(1, pool.createdConnections.get());
+        async.complete();
+      })));
+    })));
+  }
+
+  @Test
+  public void testWaiterServedByOtherShard(TestContext context) {
+    final Async async = context.async();
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(globalConfiguration);
+
+    first.runOnContext(v -> pool.take(context.asyncAssertSuccess(connection -> {
+      second.runOnContext(v2 -> {
+        pool.take(context.asyncAssertSuccess(other -> {
+          context.assertEquals(connection, other);
+          context.assertEquals(1, pool.createdConnections.get());
+          async.complete();
+        }));
+        first.runOnContext(v3 -> pool.giveBack(connection));
+      });
+    })));
+  }
+
+  // Each connection is driven by the event loop of the request it was opened for
+  @Test
+  public void testConnectionCreatedOnCallerEventLoop(TestContext context) {
+    final Async async = context.async();
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(affinityConfiguration);
+
+    first.runOnContext(v -> pool.take(context.asyncAssertSuccess(connection -> {
+      second.runOnContext(v2 -> pool.take(context.asyncAssertSuccess(other -> {
+        context.assertNotEquals(connection, other);
+        context.assertEquals(Arrays.asList(eventLoop(first), eventLoop(second)), pool.eventLoops);
+        async.complete();
+      })));
+    })));
+  }
+
+  // A connection borrowed by another event loop goes back to the shard of its own event loop
+  @Test
+  public void testAffinity(TestContext context) {
+    final Async async = context.async();
+    final AsyncConnectionPoolMock pool = new AsyncConnectionPoolMock(affinityConfiguration);
+
+    first.runOnContext(v -> pool.take(context.asyncAssertSuccess(connection -> {
+      pool.giveBack(connection);
+      second.runOnContext(v2 -> pool.take(context.asyncAssertSuccess(borrowed -> {
+        context.assertEquals(connection, borrowed);
+        context.assertEquals(1L, pool.getAffinityMisses());
+        pool.giveBack(borrowed);
+        first.runOnContext(v3 -> pool.take(context.asyncAssertSuccess(reused -> {
+          context.assertEquals(connection, reused);
+          context.assertEquals(2L, pool.getAffinityHits());
+          context.assertEquals(1, pool.createdConnections.get());
+          async.complete();
+        })));
+      })));
+    })));
+  }
+
+  private static EventLoop eventLoop(Context context) {
+    return ((ContextInternal) context).nettyEventLoop();
+  }
+
+  private class AsyncConnectionPoolMock extends AsyncConnectionPool {
+
+    final AtomicInteger createdConnections = new AtomicInteger();
+    // the event loops the connections were opened for
+    final List<EventLoop> eventLoops = new CopyOnWriteArrayList<>();
+
+    AsyncConnectionPoolMock(JsonObject config) {
+      super(AsyncConnectionPoolShardingTest.this.vertx, config, null);
+    }
+
+    @Override
+    protected Connection create(EventLoop eventLoop) {
+      eventLoops.add(eventLoop);
+      return create();
+    }
+
+    @Override
+    protected Connection create() {
+      createdConnections.incrementAndGet();
+      final Connection connection = Mockito.mock(Connection.class);
+      Mockito.when(connection.connect())
+        .thenReturn(new Promise.DefaultPromise<Connection>().success(connection).future());
+      Mockito.when(connection.isConnected()).thenReturn(true);
+      return connection;
+    }
+  }
+}